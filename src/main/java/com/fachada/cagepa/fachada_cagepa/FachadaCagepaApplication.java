@@ -1,9 +1,11 @@
 package com.fachada.cagepa.fachada_cagepa;
 
 import com.fachada.cagepa.fachada_cagepa.infra.entities.HistoricoNotificacao;
+import com.fachada.cagepa.fachada_cagepa.padroes.adapter.StrategyStats;
 import com.fachada.cagepa.fachada_cagepa.padroes.config.InvalidConfigurationException;
 import com.fachada.cagepa.fachada_cagepa.padroes.config.InvalidCredentialsException;
 import com.fachada.cagepa.fachada_cagepa.padroes.fachada.PainelCagepaFacade;
+import com.fachada.cagepa.fachada_cagepa.padroes.pipeline.BackfillIngestao;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -12,6 +14,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
 
 @SpringBootApplication
 public class FachadaCagepaApplication implements CommandLineRunner {
@@ -19,12 +23,22 @@ public class FachadaCagepaApplication implements CommandLineRunner {
 	@Autowired
 	private PainelCagepaFacade painelCagepaFacade;
 
+	@Autowired
+	private BackfillIngestao backfillIngestao;
+
 	public static void main(String[] args) {
 		SpringApplication.run(FachadaCagepaApplication.class, args);
 	}
 
 	@Override
 	public void run(String... args) throws Exception {
+		if (BackfillIngestao.solicitado(args)) {
+			System.exit(backfillIngestao.executar(args));
+		}
+
+		// Ingestao independente da sessao interativa, se houver identidade de servico
+		painelCagepaFacade.iniciarIngestaoServico();
+
 		BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
 
 		exibirMenuAutenticacao(reader);
@@ -111,6 +125,9 @@ public class FachadaCagepaApplication implements CommandLineRunner {
 					exibirMenuAuditoria(reader);
 					break;
 				case "8":
+					exibirEstatisticasOCR();
+					break;
+				case "9":
 					logout();
 					sair = true;
 					break;
@@ -129,13 +146,14 @@ public class FachadaCagepaApplication implements CommandLineRunner {
 		System.out.println("5 - Gerenciar Clientes");
 		System.out.println("6 - Consultar Consumo de Agua");
 		System.out.println("7 - Consultar Auditoria");
-		System.out.println("8 - Logout");
+		System.out.println("8 - Estatisticas do OCR");
+		System.out.println("9 - Logout");
 		System.out.print("Selecione uma opcao: ");
 	}
 
 	private void configurarDiretorio(BufferedReader reader) {
 		try {
-			System.out.print("Insira o caminho do diretorio de imagens dos hidrometros: ");
+			System.out.print("Insira o caminho do diretorio de imagens dos hidrometros (varios separados por ';'): ");
 			String caminho = reader.readLine().trim();
 
 			if (caminho.isEmpty()) {
@@ -154,6 +172,30 @@ public class FachadaCagepaApplication implements CommandLineRunner {
 		}
 	}
 
+	private void exibirEstatisticasOCR() {
+		List<StrategyStats> estatisticas = painelCagepaFacade.obterEstatisticasOCR();
+		if (estatisticas.isEmpty()) {
+			System.out.println("\nNenhuma estrategia de OCR disponivel.");
+			return;
+		}
+
+		System.out.println("\n=== ESTATISTICAS DO OCR (ordem atual da cadeia) ===");
+		int posicao = 1;
+		for (StrategyStats estatistica : estatisticas) {
+			System.out.println(posicao++ + ". " + estatistica);
+		}
+		System.out.println(painelCagepaFacade.obterResumoPreprocessamento());
+		System.out.println(painelCagepaFacade.obterResumoCacheVisual());
+
+		Map<String, Long> coalescidas = painelCagepaFacade.obterImagensCoalescidasPorHidrometro();
+		if (!coalescidas.isEmpty()) {
+			System.out.println("\n=== IMAGENS COALESCIDAS POR HIDROMETRO (rajadas) ===");
+			coalescidas.entrySet().stream()
+					.sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+					.forEach(entrada -> System.out.println(entrada.getKey() + ": " + entrada.getValue()));
+		}
+	}
+
 	private void exibirDiretorioAtual() {
 		if (painelCagepaFacade.isConfigured()) {
 			String diretorio = painelCagepaFacade.getImageDirectory();
@@ -197,9 +239,9 @@ public class FachadaCagepaApplication implements CommandLineRunner {
 	}
 
 	private void logout() {
+		// O logout so para o monitoramento quando nao ha identidade de servico
 		painelCagepaFacade.logout();
-		painelCagepaFacade.pararMonitoramento();
-		System.out.println("Logout realizado. Encerrando aplicacao...");
+		System.out.println("Logout realizado. Encerrando sessao...");
 	}
 
 	private void exibirMenuClientes(BufferedReader reader) throws Exception {
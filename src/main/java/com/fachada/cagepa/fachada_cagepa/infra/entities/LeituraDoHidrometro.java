@@ -10,7 +10,8 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "leitura_dos_hidrometros", indexes = {
-        @Index(name = "idx_sha_hidrometro", columnList = "sha_hidrometro")
+        @Index(name = "idx_sha_hidrometro", columnList = "sha_hidrometro"),
+        @Index(name = "idx_sha_hidrometro_timestamp", columnList = "sha_hidrometro, timestamp")
 })
 @Data
 @NoArgsConstructor
@@ -18,8 +19,13 @@ import java.time.LocalDateTime;
 @Builder
 public class LeituraDoHidrometro {
 
+    public static final String SEQUENCIA = "leitura_dos_hidrometros_seq";
+    public static final int ALOCACAO_IDS = 50;
+
+    // Sequencia com otimizador pooled: IDENTITY impede o Hibernate de agrupar inserts em batch
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "leitura_seq")
+    @SequenceGenerator(name = "leitura_seq", sequenceName = SEQUENCIA, allocationSize = ALOCACAO_IDS)
     private Long id;
 
     @Column(nullable = false, unique = false, name = "sha_hidrometro", length = 64)
@@ -28,6 +34,7 @@ public class LeituraDoHidrometro {
     @Column(nullable = false)
     private Long valorLeitura;
 
+    // Instante da foto (EXIF ou mtime do arquivo), nao o do processamento
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
@@ -0,0 +1,69 @@
+package com.fachada.cagepa.fachada_cagepa.infra.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Imagem publicada para processamento por qualquer instância do cluster.
+ * Instâncias arrendam linhas pendentes (ou com arrendamento vencido) com
+ * SELECT ... FOR UPDATE SKIP LOCKED e renovam o arrendamento enquanto processam.
+ * As consultas ficam em ReivindicacaoImagens; a entidade define o esquema.
+ */
+@Entity
+@Table(name = "reivindicacao_imagem",
+        uniqueConstraints = @UniqueConstraint(name = "uk_reivindicacao_arquivo",
+                columnNames = {"caminho", "tamanho", "mtime"}),
+        indexes = @Index(name = "idx_reivindicacao_situacao", columnList = "situacao, expira_em"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReivindicacaoImagem {
+
+    public static final String PENDENTE = "PENDENTE";
+    public static final String EM_ANDAMENTO = "EM_ANDAMENTO";
+    public static final String CONCLUIDA = "CONCLUIDA";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Caminho absoluto no volume compartilhado (igual em todas as instâncias)
+     */
+    @Column(nullable = false, length = 1024)
+    private String caminho;
+
+    @Column(nullable = false)
+    private Long tamanho;
+
+    @Column(nullable = false)
+    private Long mtime;
+
+    /**
+     * PENDENTE, EM_ANDAMENTO ou CONCLUIDA
+     */
+    @Column(nullable = false, length = 16)
+    private String situacao;
+
+    /**
+     * Instância que detém o arrendamento
+     */
+    @Column(length = 128)
+    private String instancia;
+
+    /**
+     * Fim do arrendamento; em linhas pendentes devolvidas com atraso, quando voltam a ser arrendáveis;
+     * em linhas concluídas, quando podem ser removidas
+     */
+    @Column(name = "expira_em")
+    private LocalDateTime expiraEm;
+
+    @Column(name = "publicada_em", nullable = false)
+    private LocalDateTime publicadaEm;
+}
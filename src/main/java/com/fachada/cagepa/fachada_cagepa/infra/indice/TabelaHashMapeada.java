@@ -0,0 +1,222 @@
+package com.fachada.cagepa.fachada_cagepa.infra.indice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tabela hash long -> long de endereçamento aberto, mantida em um arquivo mapeado em memória.
+ * Os dados ficam no page cache do sistema operacional e não no heap, de modo que milhões de
+ * entradas ocupam memória constante na JVM e sobrevivem a reinicializações.
+ *
+ * Layout: cabeçalho de 64 bytes seguido de slots de 16 bytes (chave, valor).
+ * A chave 0 marca slot vazio. Não há remoção: os índices que a usam só crescem.
+ */
+public class TabelaHashMapeada implements Closeable {
+
+    public static final long AUSENTE = Long.MIN_VALUE;
+
+    private static final long ASSINATURA = 0x4341475049445831L;
+    private static final int VERSAO = 1;
+    private static final int TAMANHO_CABECALHO = 64;
+    private static final int TAMANHO_SLOT = 16;
+    private static final int POS_CAPACIDADE = 12;
+    private static final int POS_QUANTIDADE = 16;
+    private static final int POS_METADADO = 24;
+    private static final int POS_METADADO_AUXILIAR = 32;
+    private static final double CARGA_MAXIMA = 0.7;
+    private static final int CAPACIDADE_MAXIMA = 1 << 26;
+    private static final long CHAVE_ZERO = 0x9E3779B97F4A7C15L;
+
+    private final Path arquivo;
+    private MappedByteBuffer mapa;
+    private int capacidade;
+    private long quantidade;
+
+    private TabelaHashMapeada(Path arquivo) {
+        this.arquivo = arquivo;
+    }
+
+    /**
+     * Abre a tabela existente ou cria uma nova com a capacidade inicial informada.
+     */
+    public static TabelaHashMapeada abrir(Path arquivo, int capacidadeInicial) throws IOException {
+        TabelaHashMapeada tabela = new TabelaHashMapeada(arquivo);
+        if (Files.exists(arquivo) && Files.size(arquivo) >= TAMANHO_CABECALHO) {
+            tabela.mapear(arquivo);
+            if (tabela.mapa.getLong(0) != ASSINATURA || tabela.mapa.getInt(8) != VERSAO) {
+                throw new IOException("Arquivo de indice invalido: " + arquivo);
+            }
+            tabela.capacidade = tabela.mapa.getInt(POS_CAPACIDADE);
+            tabela.quantidade = tabela.mapa.getLong(POS_QUANTIDADE);
+        } else {
+            Files.createDirectories(arquivo.toAbsolutePath().getParent());
+            tabela.mapa = criar(arquivo, potenciaDeDois(capacidadeInicial));
+            tabela.capacidade = tabela.mapa.getInt(POS_CAPACIDADE);
+        }
+        return tabela;
+    }
+
+    public synchronized long obter(long chave) {
+        int slot = localizar(normalizar(chave));
+        int posicao = posicaoSlot(slot);
+        return mapa.getLong(posicao) == 0 ? AUSENTE : mapa.getLong(posicao + 8);
+    }
+
+    public boolean contem(long chave) {
+        return obter(chave) != AUSENTE;
+    }
+
+    /**
+     * Grava o valor da chave, substituindo o anterior.
+     *
+     * @return valor anterior, ou AUSENTE se a chave era nova
+     */
+    public synchronized long colocar(long chave, long valor) throws IOException {
+        chave = normalizar(chave);
+        int posicao = posicaoSlot(localizar(chave));
+        if (mapa.getLong(posicao) != 0) {
+            long anterior = mapa.getLong(posicao + 8);
+            mapa.putLong(posicao + 8, valor);
+            return anterior;
+        }
+
+        if (quantidade + 1 > capacidade * CARGA_MAXIMA) {
+            crescer();
+            posicao = posicaoSlot(localizar(chave));
+        }
+
+        mapa.putLong(posicao, chave);
+        mapa.putLong(posicao + 8, valor);
+        quantidade++;
+        mapa.putLong(POS_QUANTIDADE, quantidade);
+        return AUSENTE;
+    }
+
+    public synchronized long getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * Valor livre no cabeçalho para o dono da tabela (por exemplo, até onde um log já foi indexado).
+     */
+    public synchronized long getMetadado() {
+        return mapa.getLong(POS_METADADO);
+    }
+
+    public synchronized void setMetadado(long valor) {
+        mapa.putLong(POS_METADADO, valor);
+    }
+
+    /**
+     * Segundo valor livre no cabeçalho (zero em tabelas que nunca o gravaram).
+     */
+    public synchronized long getMetadadoAuxiliar() {
+        return mapa.getLong(POS_METADADO_AUXILIAR);
+    }
+
+    public synchronized void setMetadadoAuxiliar(long valor) {
+        mapa.putLong(POS_METADADO_AUXILIAR, valor);
+    }
+
+    /**
+     * Força a escrita das páginas alteradas no disco.
+     */
+    public synchronized void sincronizar() {
+        mapa.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mapa != null) {
+            mapa.force();
+            mapa = null;
+        }
+    }
+
+    private int localizar(long chave) {
+        int mascara = capacidade - 1;
+        int slot = (int) (chave ^ (chave >>> 32)) & mascara;
+        while (true) {
+            long existente = mapa.getLong(posicaoSlot(slot));
+            if (existente == 0 || existente == chave) {
+                return slot;
+            }
+            slot = (slot + 1) & mascara;
+        }
+    }
+
+    /**
+     * Reconstrói a tabela com o dobro de slots em um arquivo temporário e o troca atomicamente.
+     */
+    private void crescer() throws IOException {
+        if (capacidade >= CAPACIDADE_MAXIMA) {
+            throw new IOException("Indice atingiu a capacidade maxima: " + arquivo);
+        }
+
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        MappedByteBuffer novo = criar(temporario, capacidade * 2);
+        int novaMascara = capacidade * 2 - 1;
+
+        for (int i = 0; i < capacidade; i++) {
+            long chave = mapa.getLong(posicaoSlot(i));
+            if (chave == 0) {
+                continue;
+            }
+            int slot = (int) (chave ^ (chave >>> 32)) & novaMascara;
+            while (novo.getLong(posicaoSlot(slot)) != 0) {
+                slot = (slot + 1) & novaMascara;
+            }
+            novo.putLong(posicaoSlot(slot), chave);
+            novo.putLong(posicaoSlot(slot) + 8, mapa.getLong(posicaoSlot(i) + 8));
+        }
+        novo.putLong(POS_QUANTIDADE, quantidade);
+        novo.putLong(POS_METADADO, mapa.getLong(POS_METADADO));
+        novo.putLong(POS_METADADO_AUXILIAR, mapa.getLong(POS_METADADO_AUXILIAR));
+        novo.force();
+
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapa = novo;
+        capacidade *= 2;
+    }
+
+    private void mapear(Path caminho) throws IOException {
+        try (FileChannel canal = FileChannel.open(caminho, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, canal.size());
+        }
+    }
+
+    private static MappedByteBuffer criar(Path caminho, int capacidade) throws IOException {
+        long tamanho = TAMANHO_CABECALHO + (long) capacidade * TAMANHO_SLOT;
+        try (FileChannel canal = FileChannel.open(caminho, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer novo = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanho);
+            novo.putLong(0, ASSINATURA);
+            novo.putInt(8, VERSAO);
+            novo.putInt(POS_CAPACIDADE, capacidade);
+            return novo;
+        }
+    }
+
+    private static int posicaoSlot(int slot) {
+        // MappedByteBuffer usa indices int; CAPACIDADE_MAXIMA mantem o arquivo abaixo de 2 GB
+        return TAMANHO_CABECALHO + slot * TAMANHO_SLOT;
+    }
+
+    private static long normalizar(long chave) {
+        return chave == 0 ? CHAVE_ZERO : chave;
+    }
+
+    private static int potenciaDeDois(int valor) {
+        int capacidade = 1024;
+        while (capacidade < valor && capacidade < CAPACIDADE_MAXIMA) {
+            capacidade <<= 1;
+        }
+        return capacidade;
+    }
+}
@@ -0,0 +1,131 @@
+package com.fachada.cagepa.fachada_cagepa.infra.indice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Implementação do xxHash64 (semente 0) para identificar conteúdo de arquivos e caminhos.
+ * Não é criptográfico: serve para deduplicação, não para autenticação.
+ */
+public final class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int TAMANHO_BLOCO = 32;
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private long v1 = PRIME1 + PRIME2;
+    private long v2 = PRIME2;
+    private long v3 = 0;
+    private long v4 = -PRIME1;
+    private long total;
+
+    private XxHash64() {
+    }
+
+    /**
+     * Hash do conteúdo do arquivo, lido em blocos por um FileChannel.
+     */
+    public static long hash(Path arquivo) throws IOException {
+        XxHash64 estado = new XxHash64();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANHO_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            boolean fim = false;
+            while (!fim) {
+                // Preenche o buffer inteiro para que so o ultimo bloco fique incompleto
+                while (buffer.hasRemaining()) {
+                    if (canal.read(buffer) < 0) {
+                        fim = true;
+                        break;
+                    }
+                }
+                buffer.flip();
+                estado.atualizar(buffer);
+                if (!fim) {
+                    buffer.clear();
+                }
+            }
+        }
+        return estado.finalizar(buffer);
+    }
+
+    public static long hash(String texto) {
+        return hash(ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static long hash(ByteBuffer dados) {
+        XxHash64 estado = new XxHash64();
+        ByteBuffer buffer = dados.slice().order(ByteOrder.LITTLE_ENDIAN);
+        estado.atualizar(buffer);
+        return estado.finalizar(buffer);
+    }
+
+    /**
+     * Consome os blocos completos de 32 bytes; o restante fica no buffer.
+     */
+    private void atualizar(ByteBuffer buffer) {
+        while (buffer.remaining() >= TAMANHO_BLOCO) {
+            v1 = rodada(v1, buffer.getLong());
+            v2 = rodada(v2, buffer.getLong());
+            v3 = rodada(v3, buffer.getLong());
+            v4 = rodada(v4, buffer.getLong());
+            total += TAMANHO_BLOCO;
+        }
+    }
+
+    private long finalizar(ByteBuffer resto) {
+        long h;
+        if (total >= TAMANHO_BLOCO) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mesclar(h, v1);
+            h = mesclar(h, v2);
+            h = mesclar(h, v3);
+            h = mesclar(h, v4);
+        } else {
+            h = PRIME5;
+        }
+
+        h += total + resto.remaining();
+
+        while (resto.remaining() >= 8) {
+            h ^= rodada(0, resto.getLong());
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (resto.remaining() >= 4) {
+            h ^= (resto.getInt() & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+        }
+        while (resto.hasRemaining()) {
+            h ^= (resto.get() & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long rodada(long acumulador, long entrada) {
+        acumulador += entrada * PRIME2;
+        acumulador = Long.rotateLeft(acumulador, 31);
+        return acumulador * PRIME1;
+    }
+
+    private static long mesclar(long h, long acumulador) {
+        h ^= rodada(0, acumulador);
+        return h * PRIME1 + PRIME4;
+    }
+}
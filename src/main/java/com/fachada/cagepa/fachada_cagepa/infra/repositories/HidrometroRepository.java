@@ -31,4 +31,9 @@ public interface HidrometroRepository extends JpaRepository<Hidrometro, Long> {
     List<Hidrometro> findByAtivoTrue();
 
     List<Hidrometro> findByAtivoFalse();
+
+    boolean existsByShaAndAtivoTrue(String sha);
+
+    @Query("SELECT h.sha FROM Hidrometro h WHERE h.ativo = true")
+    List<String> findShasAtivos();
 }
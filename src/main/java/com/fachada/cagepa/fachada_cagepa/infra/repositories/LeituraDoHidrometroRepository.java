@@ -2,6 +2,7 @@ package com.fachada.cagepa.fachada_cagepa.infra.repositories;
 
 import com.fachada.cagepa.fachada_cagepa.infra.entities.LeituraDoHidrometro;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -40,4 +41,45 @@ public interface LeituraDoHidrometroRepository extends JpaRepository<LeituraDoHi
     @Query("SELECT l FROM LeituraDoHidrometro l WHERE l.shaHidrometro = :sha " +
            "ORDER BY l.timestamp ASC")
     List<LeituraDoHidrometro> findAllByShaOrderedByTimestamp(@Param("sha") String sha);
+    
+    /**
+     * Retorna, para cada hidrômetro, o SHA e o tipo da leitura mais recente.
+     */
+    @Query("SELECT l.shaHidrometro, l.tipoHidrometro FROM LeituraDoHidrometro l " +
+           "WHERE l.id IN (SELECT MAX(l2.id) FROM LeituraDoHidrometro l2 GROUP BY l2.shaHidrometro)")
+    List<Object[]> findUltimoTipoPorSha();
+
+    /**
+     * Retorna, para cada hidrômetro, o SHA, o timestamp e o valor da leitura mais recente.
+     * Como as leituras crescem com o timestamp, os dois máximos pertencem à mesma leitura.
+     */
+    @Query("SELECT l.shaHidrometro, MAX(l.timestamp), MAX(l.valorLeitura) FROM LeituraDoHidrometro l " +
+           "GROUP BY l.shaHidrometro")
+    List<Object[]> findUltimaLeituraPorSha();
+
+    /**
+     * Maior valor lido até o instante (inclusive), ou null se não há leitura anterior.
+     */
+    @Query("SELECT MAX(l.valorLeitura) FROM LeituraDoHidrometro l WHERE l.shaHidrometro = :sha " +
+           "AND l.timestamp <= :instante")
+    Long findMaiorLeituraAte(@Param("sha") String sha, @Param("instante") LocalDateTime instante);
+
+    /**
+     * Menor valor lido a partir do instante (inclusive), ou null se não há leitura posterior.
+     */
+    @Query("SELECT MIN(l.valorLeitura) FROM LeituraDoHidrometro l WHERE l.shaHidrometro = :sha " +
+           "AND l.timestamp >= :instante")
+    Long findMenorLeituraDesde(@Param("sha") String sha, @Param("instante") LocalDateTime instante);
+
+    /**
+     * Remove as leituras a partir do instante (inclusive) com valor menor ou igual ao informado,
+     * desmentidas por uma leitura atrasada desse valor.
+     *
+     * @return quantidade de leituras removidas
+     */
+    @Modifying
+    @Query("DELETE FROM LeituraDoHidrometro l WHERE l.shaHidrometro = :sha " +
+           "AND l.timestamp >= :instante AND l.valorLeitura <= :valor")
+    int deleteLeiturasSuperadas(@Param("sha") String sha, @Param("instante") LocalDateTime instante,
+                                @Param("valor") long valor);
 }
@@ -0,0 +1,177 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.adapter;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.HidrometroOCRStrategy;
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.RegiaoImagem;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reaproveita a última leitura de um hidrômetro quando a janela de dígitos não mudou.
+ *
+ * Guarda, por SHA, a assinatura visual (médias de luminância em uma grade de blocos, normalizadas
+ * pelo contraste) da ROI da estratégia que reconheceu a última imagem passada pelo OCR, junto
+ * com o valor lido. Se nenhum bloco da ROI da nova imagem se afasta dessa assinatura além da
+ * tolerância, o valor anterior é devolvido sem usar a engine. A assinatura comparada é sempre a
+ * da última imagem lida pelo OCR, e não a da última reaproveitada, para que pequenas mudanças
+ * não se acumulem.
+ *
+ * O resultado reaproveitado vem marcado como tal: o pipeline o conclui como sem alteração,
+ * sem validar nem gravar uma nova leitura.
+ */
+@Component
+public class CacheVisualLeitura {
+
+    // Grade de 24 x 8 medias de luminancia: cerca de 3 colunas por digito em uma janela de 8 digitos
+    private static final int COLUNAS = 24;
+    private static final int LINHAS = 8;
+    private static final int BLOCOS = COLUNAS * LINHAS;
+    // Diferenca, em 1/255 do contraste da ROI, a partir da qual um bloco conta como alterado: o ruido
+    // do sensor move as medias em poucas unidades, um unico segmento aceso ou apagado em mais de 100
+    static final int TOLERANCIA_BLOCO = 64;
+    // Piso do contraste usado na normalizacao, em niveis de cinza, para que uma ROI lisa nao amplifique o ruido
+    private static final double CONTRASTE_MINIMO = 16.0;
+
+    private final boolean habilitado;
+    private final int distanciaMaxima;
+    private final Map<String, Assinatura> porSha = new ConcurrentHashMap<>();
+    private final Counter reaproveitadas;
+    private final Counter lidas;
+
+    public CacheVisualLeitura(MeterRegistry registry,
+                              @Value("${cagepa.ocr.cache-visual.habilitado:true}") boolean habilitado,
+                              @Value("${cagepa.ocr.cache-visual.distancia-maxima:0}") int distanciaMaxima) {
+        this.habilitado = habilitado;
+        this.distanciaMaxima = distanciaMaxima;
+        this.reaproveitadas = Counter.builder("cagepa.ocr.cache_visual")
+                .description("Imagens cuja janela de digitos foi comparada com a ultima lida do hidrometro")
+                .tag("resultado", "reaproveitada")
+                .register(registry);
+        this.lidas = Counter.builder("cagepa.ocr.cache_visual")
+                .description("Imagens cuja janela de digitos foi comparada com a ultima lida do hidrometro")
+                .tag("resultado", "ocr")
+                .register(registry);
+    }
+
+    /**
+     * Devolve a última leitura do hidrômetro se a janela de dígitos da imagem não mudou.
+     *
+     * @return resultado marcado como reaproveitado, ou null se o OCR deve rodar
+     */
+    public OCROutcome reaproveitar(String sha, BufferedImage image) {
+        if (!habilitado || sha == null) {
+            return null;
+        }
+        Assinatura anterior = porSha.get(sha);
+        if (anterior == null) {
+            return null;
+        }
+        long[] hash = hash(image, anterior.strategy.getRoi());
+        if (hash == null || distancia(hash, anterior.hash) > distanciaMaxima) {
+            lidas.increment();
+            return null;
+        }
+        reaproveitadas.increment();
+        return OCROutcome.reused(anterior.valor, anterior.strategy);
+    }
+
+    /**
+     * Registra a imagem lida pelo OCR como referência do hidrômetro.
+     */
+    public void registrar(String sha, BufferedImage image, HidrometroOCRStrategy strategy, long valor) {
+        if (!habilitado || sha == null) {
+            return;
+        }
+        long[] hash = hash(image, strategy.getRoi());
+        if (hash != null) {
+            porSha.put(sha, new Assinatura(hash, valor, strategy));
+        }
+    }
+
+    /**
+     * Assinatura da ROI: média de luminância em uma grade de blocos, normalizada entre o bloco
+     * mais escuro e o mais claro e quantizada em um byte por bloco. A normalização torna a
+     * assinatura insensível a variações globais de brilho e de contraste; as médias, ao ruído.
+     *
+     * @return um byte por bloco, 8 por long, ou null se a ROI não está contida na imagem
+     */
+    static long[] hash(BufferedImage image, Rectangle roiQuadro) {
+        Rectangle roi = roiQuadro != null
+                ? RegiaoImagem.paraCoordenadasDaImagem(roiQuadro, image)
+                : new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        if (roi.x < 0 || roi.y < 0 || roi.width < COLUNAS || roi.height < LINHAS
+                || roi.x + roi.width > image.getWidth() || roi.y + roi.height > image.getHeight()) {
+            return null;
+        }
+
+        int[] pixels = image.getRGB(roi.x, roi.y, roi.width, roi.height, null, 0, roi.width);
+        long[] somas = new long[BLOCOS];
+        int[] contagens = new int[BLOCOS];
+        for (int y = 0; y < roi.height; y++) {
+            int linha = y * LINHAS / roi.height;
+            for (int x = 0; x < roi.width; x++) {
+                int rgb = pixels[y * roi.width + x];
+                // Luminancia inteira (pesos de Rec. 601)
+                int luminancia = (299 * ((rgb >> 16) & 0xFF) + 587 * ((rgb >> 8) & 0xFF) + 114 * (rgb & 0xFF)) / 1000;
+                int bloco = linha * COLUNAS + x * COLUNAS / roi.width;
+                somas[bloco] += luminancia;
+                contagens[bloco]++;
+            }
+        }
+
+        double[] medias = new double[BLOCOS];
+        double minima = Double.MAX_VALUE;
+        double maxima = 0;
+        for (int bloco = 0; bloco < BLOCOS; bloco++) {
+            medias[bloco] = (double) somas[bloco] / contagens[bloco];
+            minima = Math.min(minima, medias[bloco]);
+            maxima = Math.max(maxima, medias[bloco]);
+        }
+        double contraste = Math.max(CONTRASTE_MINIMO, maxima - minima);
+
+        long[] assinatura = new long[(BLOCOS + 7) / 8];
+        for (int bloco = 0; bloco < BLOCOS; bloco++) {
+            long nivel = Math.round((medias[bloco] - minima) * 255 / contraste);
+            assinatura[bloco >>> 3] |= nivel << ((bloco & 7) * 8);
+        }
+        return assinatura;
+    }
+
+    /**
+     * Quantos blocos diferem entre as duas assinaturas além da tolerância.
+     */
+    static int distancia(long[] a, long[] b) {
+        int blocos = 0;
+        for (int bloco = 0; bloco < BLOCOS; bloco++) {
+            int deslocamento = (bloco & 7) * 8;
+            int nivelA = (int) (a[bloco >>> 3] >>> deslocamento) & 0xFF;
+            int nivelB = (int) (b[bloco >>> 3] >>> deslocamento) & 0xFF;
+            if (Math.abs(nivelA - nivelB) > TOLERANCIA_BLOCO) {
+                blocos++;
+            }
+        }
+        return blocos;
+    }
+
+    public long getReaproveitadas() {
+        return (long) reaproveitadas.count();
+    }
+
+    @Override
+    public String toString() {
+        long reaproveitadasAgora = getReaproveitadas();
+        long total = reaproveitadasAgora + (long) lidas.count();
+        return String.format("Cache visual %s: hidrometros=%d, reaproveitadas=%d de %d comparacoes (%.1f%%)",
+                habilitado ? "ativo" : "inativo", porSha.size(), reaproveitadasAgora, total,
+                total == 0 ? 0.0 : reaproveitadasAgora * 100.0 / total);
+    }
+
+    private record Assinatura(long[] hash, long valor, HidrometroOCRStrategy strategy) {
+    }
+}
@@ -1,51 +1,396 @@
 package com.fachada.cagepa.fachada_cagepa.padroes.adapter;
 
-import com.fachada.cagepa.fachada_cagepa.padroes.strategy.ColaboradorStrategy;
-import com.fachada.cagepa.fachada_cagepa.padroes.strategy.ProprietarioStrategy;
+import com.fachada.cagepa.fachada_cagepa.infra.repositories.LeituraDoHidrometroRepository;
+import com.fachada.cagepa.fachada_cagepa.padroes.ocr.TesseractPool;
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.HidrometroOCRStrategy;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.sourceforge.tess4j.Tesseract;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Adapta todas as estratégias de OCR registradas como beans em uma interface única.
+ *
+ * A cadeia de fallback é reordenada periodicamente pelas estatísticas ao vivo de cada
+ * estratégia (acertos por segundo de OCR), de modo que a estratégia que mais acerta,
+ * e mais rápido, seja tentada primeiro.
+ *
+ * No modo corrida (opcional), hidrômetros ainda sem estratégia conhecida executam as
+ * estratégias em paralelo, cada uma com sua própria engine do pool. A corrida tem limites:
+ * a estratégia do topo roda na thread do chamador e sempre termina antes de os demais
+ * resultados serem consultados (se ela acerta, vence); e o cancelamento dos perdedores só
+ * evita as tarefas que ainda não começaram, pois o OCR nativo não é interrompível. Uma
+ * tarefa já em execução termina e só então devolve sua engine ao pool.
+ *
+ * Antes de qualquer estratégia, o cache visual devolve a última leitura do hidrômetro
+ * quando a janela de dígitos não mudou desde a última imagem lida pelo OCR.
+ */
 @Component
 public class OCRAdapter {
 
-    private final ProprietarioStrategy proprietarioStrategy;
-    private final ColaboradorStrategy colaboradorStrategy;
+    private final LeituraDoHidrometroRepository leituraRepository;
+    private final TesseractPool tesseractPool;
+    private final CacheVisualLeitura cacheVisual;
+    private final List<StrategyStats> stats;
+    private final Map<HidrometroOCRStrategy, StrategyStats> statsByStrategy = new LinkedHashMap<>();
+    private final Map<String, HidrometroOCRStrategy> strategiesByType = new LinkedHashMap<>();
+    // Ultima estrategia que reconheceu cada hidrometro (por SHA)
+    private final Map<String, HidrometroOCRStrategy> preferredStrategyBySha = new ConcurrentHashMap<>();
+    private final long reorderIntervalMs;
+    private final AtomicLong lastReorder = new AtomicLong(System.currentTimeMillis());
+    private volatile List<HidrometroOCRStrategy> chain;
+    private final ExecutorService racingExecutor;
+    // Limita quantas tarefas de corrida podem usar engines extras ao mesmo tempo
+    private final Semaphore racingPermits;
 
-    public OCRAdapter(ProprietarioStrategy proprietarioStrategy, ColaboradorStrategy colaboradorStrategy) {
-        this.proprietarioStrategy = proprietarioStrategy;
-        this.colaboradorStrategy = colaboradorStrategy;
+    public OCRAdapter(List<HidrometroOCRStrategy> strategies, LeituraDoHidrometroRepository leituraRepository,
+                      TesseractPool tesseractPool, CacheVisualLeitura cacheVisual, MeterRegistry meterRegistry,
+                      @Value("${cagepa.ocr.reordenacao-ms:30000}") long reorderIntervalMs,
+                      @Value("${cagepa.ocr.corrida.habilitada:false}") boolean racingEnabled,
+                      @Value("${cagepa.ocr.corrida.max-concorrencia:2}") int racingConcurrency) {
+        if (strategies.isEmpty()) {
+            throw new IllegalStateException("Nenhuma estrategia de OCR registrada");
+        }
+        this.leituraRepository = leituraRepository;
+        this.tesseractPool = tesseractPool;
+        this.cacheVisual = cacheVisual;
+        this.reorderIntervalMs = reorderIntervalMs;
+        this.chain = List.copyOf(strategies);
+
+        List<StrategyStats> allStats = new ArrayList<>();
+        for (HidrometroOCRStrategy strategy : strategies) {
+            StrategyStats strategyStats = new StrategyStats(strategy, meterRegistry);
+            allStats.add(strategyStats);
+            statsByStrategy.put(strategy, strategyStats);
+            strategiesByType.put(strategy.getMeterType(), strategy);
+        }
+        this.stats = List.copyOf(allStats);
+        System.out.println("[OCRAdapter] Estrategias de OCR registradas: " + strategiesByType.keySet());
+
+        if (racingEnabled && racingConcurrency > 0 && strategies.size() > 1) {
+            AtomicInteger contador = new AtomicInteger();
+            this.racingExecutor = Executors.newFixedThreadPool(racingConcurrency, r -> {
+                Thread thread = new Thread(r, "OCRAdapter-Corrida-" + contador.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.racingPermits = new Semaphore(racingConcurrency);
+        } else {
+            this.racingExecutor = null;
+            this.racingPermits = null;
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        if (racingExecutor != null) {
+            racingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Semeia a memória de roteamento com o tipo da leitura mais recente de cada hidrômetro.
+     */
+    @PostConstruct
+    public void carregarEstrategiasPreferidas() {
+        try {
+            for (Object[] linha : leituraRepository.findUltimoTipoPorSha()) {
+                HidrometroOCRStrategy strategy = strategiesByType.get((String) linha[1]);
+                if (strategy != null) {
+                    preferredStrategyBySha.put((String) linha[0], strategy);
+                }
+            }
+            System.out.println("[OCRAdapter] Estrategias preferidas carregadas para "
+                    + preferredStrategyBySha.size() + " hidrometros");
+        } catch (RuntimeException e) {
+            System.err.println("[OCRAdapter] Nao foi possivel carregar estrategias preferidas: " + e.getMessage());
+        }
     }
 
     public String extractMeterId(String filename) {
-        return proprietarioStrategy.extractMeterId(filename);
+        // Todas as estrategias derivam o SHA do nome do arquivo da mesma forma
+        return stats.get(0).getStrategy().extractMeterId(filename);
     }
 
-    public Long tryExtractMeterValue(BufferedImage image) {
-        Long proprietarioValue = proprietarioStrategy.extractMeterValue(image);
-        if (proprietarioValue != null) {
-            return proprietarioValue;
+    /**
+     * Tenta as estratégias em sequência, executando cada uma no máximo uma vez,
+     * e devolve valor e tipo do hidrômetro em um único resultado.
+     */
+    public OCROutcome extractReading(BufferedImage image, Tesseract tesseract) {
+        return extractReading(null, image, tesseract);
+    }
+
+    /**
+     * Como {@link #extractReading(BufferedImage, Tesseract)}, mas tentando primeiro a
+     * estratégia que reconheceu este hidrômetro da última vez. A cadeia completa só é
+     * percorrida quando a estratégia preferida falha. Se a janela de dígitos estiver
+     * visualmente igual à da última imagem lida deste hidrômetro, nenhuma estratégia roda.
+     */
+    public OCROutcome extractReading(String sha, BufferedImage image, Tesseract tesseract) {
+        OCROutcome reaproveitada = cacheVisual.reaproveitar(sha, image);
+        if (reaproveitada != null) {
+            return reaproveitada;
         }
 
-        Long colaboradorValue = colaboradorStrategy.extractMeterValue(image);
-        if (colaboradorValue != null) {
-            return colaboradorValue;
+        reorderIfDue();
+        if (racingExecutor != null && sha != null && !preferredStrategyBySha.containsKey(sha)) {
+            return extractReadingRacing(sha, image, tesseract);
         }
 
-        return null;
+        Map<String, Long> strategyNanos = new LinkedHashMap<>();
+
+        for (HidrometroOCRStrategy strategy : orderFor(sha)) {
+            OCROutcome acerto = runStrategy(strategy, image, tesseract, strategyNanos);
+            if (acerto != null) {
+                if (sha != null) {
+                    preferredStrategyBySha.put(sha, strategy);
+                    cacheVisual.registrar(sha, image, strategy, acerto.getValue());
+                }
+                return new OCROutcome(acerto.getValue(), strategy, strategyNanos);
+            }
+        }
+
+        return new OCROutcome(null, null, strategyNanos);
+    }
+
+    /**
+     * Executa a cadeia em corrida: a primeira estratégia usa a engine do chamador e as
+     * demais usam engines livres do pool, até o limite de concorrência. Estratégias que não
+     * conseguem engine ou permissão rodam depois, em sequência, se ninguém tiver vencido.
+     * Entre as tarefas paralelas, vence a primeira que terminar com acerto.
+     */
+    private OCROutcome extractReadingRacing(String sha, BufferedImage image, Tesseract tesseract) {
+        List<HidrometroOCRStrategy> order = chain;
+        Map<String, Long> strategyNanos = new ConcurrentHashMap<>();
+        BlockingQueue<TarefaCorrida> concluidas = new LinkedBlockingQueue<>();
+        List<TarefaCorrida> tarefas = new ArrayList<>();
+        List<HidrometroOCRStrategy> semEngine = new ArrayList<>();
+
+        for (HidrometroOCRStrategy strategy : order.subList(1, order.size())) {
+            if (!racingPermits.tryAcquire()) {
+                semEngine.add(strategy);
+                continue;
+            }
+            Tesseract engineExtra = tesseractPool.tentarEmprestar();
+            if (engineExtra == null) {
+                racingPermits.release();
+                semEngine.add(strategy);
+                continue;
+            }
+            TarefaCorrida tarefa = new TarefaCorrida(strategy, image, engineExtra, strategyNanos, concluidas);
+            try {
+                racingExecutor.execute(tarefa);
+                tarefas.add(tarefa);
+            } catch (RejectedExecutionException e) {
+                // Executor encerrado: a tarefa nunca roda, e o cancelamento devolve a engine
+                tarefa.cancel(false);
+                semEngine.add(strategy);
+            }
+        }
+
+        try {
+            // A estrategia do topo roda na propria thread, com a engine ja emprestada
+            OCROutcome vencedor = runStrategy(order.get(0), image, tesseract, strategyNanos);
+            for (int restantes = tarefas.size(); vencedor == null && restantes > 0; restantes--) {
+                vencedor = aguardar(concluidas);
+            }
+            for (int i = 0; vencedor == null && i < semEngine.size(); i++) {
+                vencedor = runStrategy(semEngine.get(i), image, tesseract, strategyNanos);
+            }
+
+            if (vencedor != null) {
+                preferredStrategyBySha.put(sha, vencedor.getStrategy());
+                cacheVisual.registrar(sha, image, vencedor.getStrategy(), vencedor.getValue());
+                return new OCROutcome(vencedor.getValue(), vencedor.getStrategy(), strategyNanos);
+            }
+            return new OCROutcome(null, null, strategyNanos);
+        } finally {
+            // Tarefas ainda na fila sao descartadas e devolvem a engine; as que ja rodam terminam
+            tarefas.forEach(tarefa -> tarefa.cancel(false));
+        }
+    }
+
+    /**
+     * Executa uma estratégia registrando tempo e acerto.
+     *
+     * @return resultado sem tempos se a estratégia reconheceu o valor, ou null
+     */
+    private OCROutcome runStrategy(HidrometroOCRStrategy strategy, BufferedImage image, Tesseract engine,
+                                   Map<String, Long> strategyNanos) {
+        long inicio = System.nanoTime();
+        Long value = strategy.extractMeterValue(image, engine);
+        long nanos = System.nanoTime() - inicio;
+        strategyNanos.put(strategy.getMeterType(), nanos);
+        statsByStrategy.get(strategy).record(value != null, nanos);
+        return value != null ? new OCROutcome(value, strategy, Map.of()) : null;
     }
 
-    public String determineMeterType(BufferedImage image) {
-        Long proprietarioValue = proprietarioStrategy.extractMeterValue(image);
-        if (proprietarioValue != null) {
-            return proprietarioStrategy.getMeterType();
+    private OCROutcome aguardar(BlockingQueue<TarefaCorrida> concluidas) {
+        try {
+            return concluidas.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tarefa de corrida dona de uma engine emprestada e de uma permissão. Quem tomar posse
+     * primeiro as devolve, exatamente uma vez: a execução, ao terminar, ou o cancelamento de
+     * uma tarefa que nunca começou. Ao terminar sem ser cancelada, a tarefa entra na fila de
+     * concluídas da corrida.
+     */
+    private final class TarefaCorrida extends FutureTask<OCROutcome> {
+        private final Tesseract engine;
+        private final BlockingQueue<TarefaCorrida> concluidas;
+        private final AtomicBoolean posse = new AtomicBoolean();
+
+        private TarefaCorrida(HidrometroOCRStrategy strategy, BufferedImage image, Tesseract engine,
+                              Map<String, Long> strategyNanos, BlockingQueue<TarefaCorrida> concluidas) {
+            super(() -> runStrategy(strategy, image, engine, strategyNanos));
+            this.engine = engine;
+            this.concluidas = concluidas;
         }
 
-        Long colaboradorValue = colaboradorStrategy.extractMeterValue(image);
-        if (colaboradorValue != null) {
-            return colaboradorStrategy.getMeterType();
+        @Override
+        public void run() {
+            if (!posse.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                devolverEngine();
+            }
         }
 
-        return "DESCONHECIDO";
+        @Override
+        protected void done() {
+            if (!isCancelled()) {
+                concluidas.add(this);
+            } else if (posse.compareAndSet(false, true)) {
+                devolverEngine();
+            }
+        }
+
+        private void devolverEngine() {
+            tesseractPool.devolver(engine);
+            racingPermits.release();
+        }
+    }
+
+    /**
+     * Menor retângulo do quadro que contém as ROIs de todas as estratégias,
+     * ou null se alguma estratégia precisa da imagem inteira.
+     */
+    public Rectangle getDecodeRegion() {
+        Rectangle regiao = null;
+        for (StrategyStats strategyStats : stats) {
+            Rectangle roi = strategyStats.getStrategy().getRoi();
+            if (roi == null) {
+                return null;
+            }
+            regiao = regiao == null ? new Rectangle(roi) : regiao.union(roi);
+        }
+        return regiao;
+    }
+
+    /**
+     * Subamostragem de decodificação aceita por todas as estratégias.
+     */
+    public int getDecodeSubsampling() {
+        return stats.stream()
+                .mapToInt(strategyStats -> Math.max(1, strategyStats.getStrategy().getMaxSubsampling()))
+                .min()
+                .orElse(1);
+    }
+
+    public Long tryExtractMeterValue(BufferedImage image, Tesseract tesseract) {
+        return extractReading(image, tesseract).getValue();
+    }
+
+    public String determineMeterType(BufferedImage image, Tesseract tesseract) {
+        return extractReading(image, tesseract).getMeterType();
+    }
+
+    /**
+     * Resumo das leituras reaproveitadas pelo cache visual.
+     */
+    public String getResumoCacheVisual() {
+        return cacheVisual.toString();
+    }
+
+    /**
+     * Ordem atual da cadeia de fallback (tipos de hidrômetro).
+     */
+    public List<String> getChainOrder() {
+        return chain.stream().map(HidrometroOCRStrategy::getMeterType).toList();
+    }
+
+    /**
+     * Estatísticas de cada estratégia, na ordem atual da cadeia.
+     */
+    public List<StrategyStats> getStrategyStats() {
+        return chain.stream().map(statsByStrategy::get).toList();
+    }
+
+    private void reorderIfDue() {
+        long agora = System.currentTimeMillis();
+        long anterior = lastReorder.get();
+        if (agora - anterior < reorderIntervalMs || !lastReorder.compareAndSet(anterior, agora)) {
+            return;
+        }
+
+        stats.forEach(StrategyStats::fecharJanela);
+        List<HidrometroOCRStrategy> novaOrdem = stats.stream()
+                .sorted(Comparator.comparingDouble(StrategyStats::score).reversed())
+                .map(StrategyStats::getStrategy)
+                .toList();
+        if (!novaOrdem.equals(chain)) {
+            chain = novaOrdem;
+            System.out.println("[OCRAdapter] Cadeia de OCR reordenada: " + getChainOrder());
+        }
+    }
+
+    private List<HidrometroOCRStrategy> orderFor(String sha) {
+        List<HidrometroOCRStrategy> current = chain;
+        HidrometroOCRStrategy preferred = sha != null ? preferredStrategyBySha.get(sha) : null;
+        if (preferred == null || preferred == current.get(0)) {
+            return current;
+        }
+
+        List<HidrometroOCRStrategy> order = new ArrayList<>(current.size());
+        order.add(preferred);
+        for (HidrometroOCRStrategy strategy : current) {
+            if (strategy != preferred) {
+                order.add(strategy);
+            }
+        }
+        return order;
     }
 }
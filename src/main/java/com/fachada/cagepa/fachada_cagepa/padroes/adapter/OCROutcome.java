@@ -0,0 +1,77 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.adapter;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.HidrometroOCRStrategy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resultado imutável de uma única passada de OCR sobre a imagem:
+ * valor lido, estratégia que reconheceu o valor, tipo de hidrômetro
+ * e o tempo gasto em cada estratégia tentada, na ordem em que foram tentadas.
+ * Um resultado reaproveitado repete a última leitura do hidrômetro sem ter rodado o OCR.
+ */
+public class OCROutcome {
+    public static final String TIPO_DESCONHECIDO = "DESCONHECIDO";
+
+    private final Long value;
+    private final HidrometroOCRStrategy strategy;
+    private final Map<String, Long> strategyNanos;
+    private final boolean reused;
+
+    public OCROutcome(Long value, HidrometroOCRStrategy strategy, Map<String, Long> strategyNanos) {
+        this(value, strategy, strategyNanos, false);
+    }
+
+    private OCROutcome(Long value, HidrometroOCRStrategy strategy, Map<String, Long> strategyNanos, boolean reused) {
+        this.value = value;
+        this.strategy = strategy;
+        this.strategyNanos = Collections.unmodifiableMap(new LinkedHashMap<>(strategyNanos));
+        this.reused = reused;
+    }
+
+    /**
+     * Última leitura do hidrômetro, devolvida porque a janela de dígitos não mudou.
+     */
+    public static OCROutcome reused(Long value, HidrometroOCRStrategy strategy) {
+        return new OCROutcome(value, strategy, Map.of(), true);
+    }
+
+    public Long getValue() {
+        return value;
+    }
+
+    public HidrometroOCRStrategy getStrategy() {
+        return strategy;
+    }
+
+    public String getMeterType() {
+        return strategy != null ? strategy.getMeterType() : TIPO_DESCONHECIDO;
+    }
+
+    /**
+     * Tempo de OCR por tipo de estratégia, em nanossegundos.
+     */
+    public Map<String, Long> getStrategyNanos() {
+        return strategyNanos;
+    }
+
+    public boolean isRecognized() {
+        return value != null;
+    }
+
+    public boolean isReused() {
+        return reused;
+    }
+
+    @Override
+    public String toString() {
+        return "OCROutcome{" +
+                "value=" + value +
+                ", meterType='" + getMeterType() + '\'' +
+                ", strategyNanos=" + strategyNanos +
+                (reused ? ", reused=true" : "") +
+                '}';
+    }
+}
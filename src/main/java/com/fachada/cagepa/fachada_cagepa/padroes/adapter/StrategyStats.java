@@ -0,0 +1,120 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.adapter;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.HidrometroOCRStrategy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores ao vivo de uma estratégia de OCR: tentativas, acertos e tempo acumulado.
+ * Os totais desde a partida são só exibidos e publicados como o timer cagepa.ocr.estrategia,
+ * por estratégia e resultado. A ordem da cadeia de fallback usa contadores com decaimento:
+ * a cada reordenação do OCRAdapter, a janela que se fecha entra em uma média móvel
+ * exponencial, e uma estratégia que piorou (câmera trocada, iluminação nova) perde posição
+ * em alguns intervalos, em vez de ficar presa ao histórico acumulado.
+ */
+public class StrategyStats {
+
+    private static final double NANOS_PADRAO = 1_000_000.0;
+    // Peso das janelas anteriores a cada fechamento: meia-vida de cerca de 3 janelas
+    static final double DECAIMENTO = 0.8;
+
+    private final HidrometroOCRStrategy strategy;
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    // Janela corrente, zerada a cada reordenacao
+    private final LongAdder janelaAttempts = new LongAdder();
+    private final LongAdder janelaHits = new LongAdder();
+    private final LongAdder janelaNanos = new LongAdder();
+    // Janelas fechadas, com decaimento
+    private volatile double recentAttempts;
+    private volatile double recentHits;
+    private volatile double recentNanos;
+    private final Timer hitTimer;
+    private final Timer missTimer;
+
+    public StrategyStats(HidrometroOCRStrategy strategy, MeterRegistry registry) {
+        this.strategy = strategy;
+        this.hitTimer = timer(registry, strategy, "acerto");
+        this.missTimer = timer(registry, strategy, "falha");
+    }
+
+    public void record(boolean hit, long nanos) {
+        attempts.increment();
+        totalNanos.add(nanos);
+        janelaAttempts.increment();
+        janelaNanos.add(nanos);
+        if (hit) {
+            hits.increment();
+            janelaHits.increment();
+        }
+        (hit ? hitTimer : missTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public HidrometroOCRStrategy getStrategy() {
+        return strategy;
+    }
+
+    public String getMeterType() {
+        return strategy.getMeterType();
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public double getHitRate() {
+        long tentativas = getAttempts();
+        return tentativas == 0 ? 0.0 : (double) getHits() / tentativas;
+    }
+
+    public double getAverageMillis() {
+        long tentativas = getAttempts();
+        return tentativas == 0 ? 0.0 : totalNanos.sum() / (double) tentativas / 1_000_000.0;
+    }
+
+    /**
+     * Fecha a janela corrente, somando-a às anteriores com decaimento. Chamado pelo
+     * OCRAdapter a cada reordenação, por uma única thread.
+     */
+    public void fecharJanela() {
+        recentAttempts = recentAttempts * DECAIMENTO + janelaAttempts.sumThenReset();
+        recentHits = recentHits * DECAIMENTO + janelaHits.sumThenReset();
+        recentNanos = recentNanos * DECAIMENTO + janelaNanos.sumThenReset();
+    }
+
+    /**
+     * Acertos esperados por segundo de OCR, pelos contadores com decaimento e pela janela
+     * corrente. A taxa de acerto é suavizada para que estratégias sem tentativas recentes
+     * não fiquem presas no fim da cadeia.
+     */
+    public double score() {
+        double tentativas = recentAttempts + janelaAttempts.sum();
+        double taxaSuavizada = (recentHits + janelaHits.sum() + 1.0) / (tentativas + 2.0);
+        double nanosMedios = tentativas == 0.0 ? NANOS_PADRAO
+                : Math.max(1.0, (recentNanos + janelaNanos.sum()) / tentativas);
+        return taxaSuavizada / nanosMedios;
+    }
+
+    private static Timer timer(MeterRegistry registry, HidrometroOCRStrategy strategy, String resultado) {
+        return Timer.builder("cagepa.ocr.estrategia")
+                .description("Tempo de OCR de cada estrategia por tentativa")
+                .tag("estrategia", strategy.getMeterType())
+                .tag("resultado", resultado)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: tentativas=%d, acertos=%d (%.1f%%), tempo medio=%.1f ms",
+                getMeterType(), getAttempts(), getHits(), getHitRate() * 100, getAverageMillis());
+    }
+}
@@ -7,6 +7,7 @@ import com.fachada.cagepa.fachada_cagepa.infra.entities.PessoaJuridica;
 import com.fachada.cagepa.fachada_cagepa.infra.repositories.EnderecoRepository;
 import com.fachada.cagepa.fachada_cagepa.infra.repositories.HidrometroRepository;
 import com.fachada.cagepa.fachada_cagepa.padroes.config.InvalidConfigurationException;
+import com.fachada.cagepa.fachada_cagepa.padroes.ocr.FiltroHidrometrosAtivos;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,13 +21,16 @@ public class HidrometroService {
     private final EnderecoRepository enderecoRepository;
     private final PessoaFisicaService pessoaFisicaService;
     private final PessoaJuridicaService pessoaJuridicaService;
+    private final FiltroHidrometrosAtivos filtroHidrometrosAtivos;
 
     public HidrometroService(HidrometroRepository hidrometry, EnderecoRepository enderecoRepository,
-                              PessoaFisicaService pessoaFisicaService, PessoaJuridicaService pessoaJuridicaService) {
+                              PessoaFisicaService pessoaFisicaService, PessoaJuridicaService pessoaJuridicaService,
+                              FiltroHidrometrosAtivos filtroHidrometrosAtivos) {
         this.hidrometry = hidrometry;
         this.enderecoRepository = enderecoRepository;
         this.pessoaFisicaService = pessoaFisicaService;
         this.pessoaJuridicaService = pessoaJuridicaService;
+        this.filtroHidrometrosAtivos = filtroHidrometrosAtivos;
     }
 
     @Transactional
@@ -62,6 +66,7 @@ public class HidrometroService {
                 .build();
 
         hidrometry.save(hidrometro);
+        filtroHidrometrosAtivos.incluir(hidrometro.getSha());
     }
 
     @Transactional
@@ -97,6 +102,7 @@ public class HidrometroService {
                 .build();
 
         hidrometry.save(hidrometro);
+        filtroHidrometrosAtivos.incluir(hidrometro.getSha());
     }
 
     @Transactional
@@ -221,6 +227,7 @@ public class HidrometroService {
         hidrometro.setAtivo(true);
         hidrometro.setDataInativacao(null);
         hidrometry.save(hidrometro);
+        filtroHidrometrosAtivos.incluir(hidrometro.getSha());
     }
 
     @Transactional
@@ -235,6 +242,7 @@ public class HidrometroService {
         hidrometro.setAtivo(false);
         hidrometro.setDataInativacao(LocalDateTime.now());
         hidrometry.save(hidrometro);
+        filtroHidrometrosAtivos.remover(hidrometro.getSha());
     }
 
     @Transactional(readOnly = true)
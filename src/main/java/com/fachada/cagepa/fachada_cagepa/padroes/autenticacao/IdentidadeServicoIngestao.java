@@ -0,0 +1,78 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.autenticacao;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.config.InvalidCredentialsException;
+import com.fachada.cagepa.fachada_cagepa.padroes.config.JwtTokenProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Identidade de serviço sob a qual a ingestão roda sem sessão interativa.
+ *
+ * Usa a conta de administrador configurada em cagepa.ingestao.servico.usuario/senha
+ * (ou nas variáveis CAGEPA_INGESTAO_SERVICO_USUARIO/SENHA). A sessão é independente da
+ * do operador: logout no menu não interrompe a ingestão, e as fotos tiradas à noite ou
+ * entre turnos entram no ritmo em que chegam. O token é renovado antes de expirar; se a
+ * conta for desativada, a renovação falha e a ingestão volta a depender de um login.
+ */
+@Component
+public class IdentidadeServicoIngestao {
+
+    // Token expira em 1 hora; renova com folga
+    private static final long RENOVACAO_MS = 30 * 60 * 1000;
+
+    private final AdministradorService administradorService;
+    private final JwtTokenProvider jwtTokenProvider;
+    private final String usuario;
+    private final String senha;
+    private volatile String token;
+    private volatile long renovarEm = 0;
+
+    public IdentidadeServicoIngestao(AdministradorService administradorService, JwtTokenProvider jwtTokenProvider,
+                                     @Value("${cagepa.ingestao.servico.usuario:}") String usuario,
+                                     @Value("${cagepa.ingestao.servico.senha:}") String senha) {
+        this.administradorService = administradorService;
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.usuario = usuario;
+        this.senha = senha;
+    }
+
+    public boolean isConfigurada() {
+        return !usuario.isBlank() && !senha.isEmpty();
+    }
+
+    /**
+     * Autentica a conta de serviço.
+     *
+     * @return true se a identidade está configurada e as credenciais são válidas
+     */
+    public synchronized boolean autenticar() {
+        if (!isConfigurada()) {
+            return false;
+        }
+        try {
+            token = administradorService.login(usuario, senha);
+            renovarEm = System.currentTimeMillis() + RENOVACAO_MS;
+            System.out.println("[Ingestao] Identidade de servico autenticada: " + jwtTokenProvider.extrairUsername(token));
+            return true;
+        } catch (InvalidCredentialsException e) {
+            token = null;
+            System.err.println("Aviso: Identidade de servico da ingestao recusada: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Indica se a ingestão pode seguir sob a identidade de serviço, renovando o token quando necessário.
+     */
+    public boolean estaAtiva() {
+        if (token == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() < renovarEm) {
+            return true;
+        }
+        synchronized (this) {
+            return System.currentTimeMillis() < renovarEm || autenticar();
+        }
+    }
+}
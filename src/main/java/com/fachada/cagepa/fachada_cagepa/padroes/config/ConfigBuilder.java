@@ -3,8 +3,12 @@ package com.fachada.cagepa.fachada_cagepa.padroes.config;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 public class ConfigBuilder {
+    public static final String IMAGE_DIRECTORY_SEPARATOR = ";";
+
     private String imageDirectory;
 
     public ConfigBuilder withImageDirectory(String path) {
@@ -20,11 +24,31 @@ public class ConfigBuilder {
         return imageDirectory;
     }
 
+    /**
+     * Separa a configuração em diretórios raiz (vários podem ser informados separados por ';').
+     */
+    public static List<String> parseImageDirectories(String value) {
+        if (value == null) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(IMAGE_DIRECTORY_SEPARATOR))
+                .map(String::trim)
+                .filter(path -> !path.isEmpty())
+                .toList();
+    }
+
     private void validateImageDirectory() throws InvalidConfigurationException {
-        if (imageDirectory == null || imageDirectory.trim().isEmpty()) {
+        List<String> directories = parseImageDirectories(imageDirectory);
+        if (directories.isEmpty()) {
             throw new InvalidConfigurationException("O diretório de imagens não pode estar vazio");
         }
 
+        for (String directory : directories) {
+            validateDirectory(directory);
+        }
+    }
+
+    private void validateDirectory(String imageDirectory) throws InvalidConfigurationException {
         Path dirPath = Paths.get(imageDirectory);
 
         if (!Files.exists(dirPath)) {
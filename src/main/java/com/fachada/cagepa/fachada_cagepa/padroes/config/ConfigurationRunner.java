@@ -1,6 +1,7 @@
 package com.fachada.cagepa.fachada_cagepa.padroes.config;
 
 import com.fachada.cagepa.fachada_cagepa.padroes.fachada.PainelCagepaFacade;
+import com.fachada.cagepa.fachada_cagepa.padroes.pipeline.BackfillIngestao;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
@@ -14,6 +15,10 @@ public class ConfigurationRunner implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        if (BackfillIngestao.solicitado(args)) {
+            return;
+        }
+
         if (!painelCagepaFacade.isConfigured()) {
             System.out.println("Configuracao inicial necessaria!");
             ConfigurationCommand command = new ConfigurationCommand();
@@ -0,0 +1,94 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Endpoint HTTP local para coleta das métricas (GET /metrics, formato texto do Prometheus).
+ *
+ * Usa o servidor HTTP do JDK em uma única thread, sem subir o servidor web do Spring.
+ * Por padrão escuta apenas em 127.0.0.1; a coleta remota passa por um agente na máquina
+ * ou pela troca explícita de cagepa.metricas.endereco.
+ */
+@Component
+public class EndpointMetricas {
+
+    private static final String CAMINHO = "/metrics";
+    private static final String TIPO_CONTEUDO = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final PrometheusMeterRegistry registry;
+    private final boolean habilitado;
+    private final String endereco;
+    private final int porta;
+    private HttpServer servidor;
+    private ExecutorService executor;
+
+    public EndpointMetricas(PrometheusMeterRegistry registry,
+                            @Value("${cagepa.metricas.habilitado:true}") boolean habilitado,
+                            @Value("${cagepa.metricas.endereco:127.0.0.1}") String endereco,
+                            @Value("${cagepa.metricas.porta:9464}") int porta) {
+        this.registry = registry;
+        this.habilitado = habilitado;
+        this.endereco = endereco;
+        this.porta = porta;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            return;
+        }
+        try {
+            servidor = HttpServer.create(new InetSocketAddress(endereco, porta), 0);
+        } catch (IOException e) {
+            // Porta ocupada (outra instancia na mesma maquina): segue sem endpoint
+            System.err.println("Aviso: Endpoint de metricas indisponivel em " + endereco + ":" + porta
+                    + ": " + e.getMessage());
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Metricas-HTTP");
+            thread.setDaemon(true);
+            return thread;
+        });
+        servidor.setExecutor(executor);
+        servidor.createContext(CAMINHO, this::responder);
+        servidor.start();
+        System.out.println("[Metricas] Endpoint em http://" + endereco + ":" + porta + CAMINHO);
+    }
+
+    @PreDestroy
+    public void parar() {
+        if (servidor != null) {
+            servidor.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void responder(HttpExchange troca) throws IOException {
+        try (troca) {
+            if (!"GET".equals(troca.getRequestMethod())) {
+                troca.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] corpo = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            troca.getResponseHeaders().set("Content-Type", TIPO_CONTEUDO);
+            troca.sendResponseHeaders(200, corpo.length);
+            try (OutputStream saida = troca.getResponseBody()) {
+                saida.write(corpo);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.config;
+
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registro de métricas Micrometer da aplicação, no formato de exposição do Prometheus.
+ * A aplicação não sobe servidor web; as métricas são servidas pelo EndpointMetricas.
+ */
+@Configuration
+public class MetricasConfig {
+
+    @Bean
+    public PrometheusMeterRegistry prometheusMeterRegistry() {
+        return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    }
+}
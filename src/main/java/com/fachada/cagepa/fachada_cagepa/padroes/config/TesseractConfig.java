@@ -3,16 +3,22 @@ package com.fachada.cagepa.fachada_cagepa.padroes.config;
 import net.sourceforge.tess4j.Tesseract;
 import org.springframework.stereotype.Component;
 
+/**
+ * Fabrica de engines Tesseract com a configuracao padrao do sistema.
+ * Cada engine nao e thread-safe; instancias devem ser obtidas via TesseractPool.
+ */
 @Component
 public class TesseractConfig {
 
+    private static final String DATAPATH = "/usr/share/tesseract-ocr/5/tessdata";
+    private static final String LANGUAGE = "por";
+    // Cada ROI contem uma unica linha de digitos
+    private static final int PSM_SINGLE_LINE = 7;
+    private static final String DIGITOS = "0123456789";
+
     private static TesseractConfig instance;
-    private final Tesseract tesseract;
 
     private TesseractConfig() {
-        this.tesseract = new Tesseract();
-        this.tesseract.setDatapath("/usr/share/tesseract-ocr/5/tessdata");
-        this.tesseract.setLanguage("por");
     }
 
     public static synchronized TesseractConfig getInstance() {
@@ -22,7 +28,15 @@ public class TesseractConfig {
         return instance;
     }
 
-    public Tesseract getTesseract() {
+    /**
+     * Cria uma nova engine Tesseract configurada para uma linha de dígitos.
+     */
+    public Tesseract criarTesseract() {
+        Tesseract tesseract = new Tesseract();
+        tesseract.setDatapath(DATAPATH);
+        tesseract.setLanguage(LANGUAGE);
+        tesseract.setPageSegMode(PSM_SINGLE_LINE);
+        tesseract.setVariable("tessedit_char_whitelist", DIGITOS);
         return tesseract;
     }
 }
@@ -7,6 +7,10 @@ import com.fachada.cagepa.fachada_cagepa.infra.entities.PessoaJuridica;
 import com.fachada.cagepa.fachada_cagepa.infra.entities.ConfiguracaoLimiteConsumo;
 import com.fachada.cagepa.fachada_cagepa.infra.entities.HistoricoNotificacao;
 import com.fachada.cagepa.fachada_cagepa.infra.entities.AuditoriaOperacao;
+import com.fachada.cagepa.fachada_cagepa.padroes.adapter.OCRAdapter;
+import com.fachada.cagepa.fachada_cagepa.padroes.adapter.StrategyStats;
+import com.fachada.cagepa.fachada_cagepa.padroes.autenticacao.IdentidadeServicoIngestao;
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.PreprocessadorRoi;
 import com.fachada.cagepa.fachada_cagepa.padroes.command.ConsumptionResult;
 import com.fachada.cagepa.fachada_cagepa.padroes.config.ConfigBuilder;
 import com.fachada.cagepa.fachada_cagepa.padroes.config.ConfigManager;
@@ -15,6 +19,7 @@ import com.fachada.cagepa.fachada_cagepa.padroes.config.InvalidCredentialsExcept
 import com.fachada.cagepa.fachada_cagepa.padroes.fachada.proxy.AdminProxyFachada;
 import com.fachada.cagepa.fachada_cagepa.padroes.fachada.proxy.ClienteProxyFachada;
 import com.fachada.cagepa.fachada_cagepa.padroes.fachada.proxy.HidrometroProxyFachada;
+import com.fachada.cagepa.fachada_cagepa.padroes.pipeline.PipelineIngestao;
 import com.fachada.cagepa.fachada_cagepa.padroes.service.ConsumptionCalculationService;
 import com.fachada.cagepa.fachada_cagepa.padroes.service.NotificationService;
 import com.fachada.cagepa.fachada_cagepa.padroes.service.AuditoriaService;
@@ -42,6 +47,18 @@ public class PainelCagepaFacade {
 
     @Autowired(required = false)
     private HidrometroProxyFachada hidrometroProxyFachada;
+
+    @Autowired(required = false)
+    private OCRAdapter ocrAdapter;
+
+    @Autowired(required = false)
+    private PreprocessadorRoi preprocessadorRoi;
+
+    @Autowired(required = false)
+    private PipelineIngestao pipelineIngestao;
+
+    @Autowired(required = false)
+    private IdentidadeServicoIngestao identidadeServicoIngestao;
     
     @Autowired
     private ConsumptionCalculationService consumptionCalculationService;
@@ -140,6 +157,23 @@ public class PainelCagepaFacade {
         }
     }
 
+    /**
+     * Inicia a ingestão sem sessão interativa, sob a identidade de serviço, se ela estiver
+     * configurada. Sem ela, o monitoramento continua dependendo do login de um administrador.
+     *
+     * @return true se a ingestão foi iniciada
+     */
+    public synchronized boolean iniciarIngestaoServico() {
+        if (identidadeServicoIngestao == null || !identidadeServicoIngestao.isConfigurada()) {
+            return false;
+        }
+        if (!identidadeServicoIngestao.autenticar()) {
+            return false;
+        }
+        iniciarMonitoramento();
+        return isConfigured();
+    }
+
     public synchronized void pararMonitoramento() {
         if (imagemWatcher != null) {
             imagemWatcher.stop();
@@ -147,6 +181,34 @@ public class PainelCagepaFacade {
         }
     }
 
+    /**
+     * Estatísticas das estratégias de OCR, na ordem atual da cadeia de fallback.
+     */
+    public List<StrategyStats> obterEstatisticasOCR() {
+        return ocrAdapter != null ? ocrAdapter.getStrategyStats() : List.of();
+    }
+
+    /**
+     * Resumo dos tempos de pré-processamento e de OCR por região de interesse.
+     */
+    public String obterResumoPreprocessamento() {
+        return preprocessadorRoi != null ? preprocessadorRoi.toString() : "Pre-processamento indisponivel";
+    }
+
+    /**
+     * Resumo das leituras reaproveitadas sem OCR por janela de dígitos inalterada.
+     */
+    public String obterResumoCacheVisual() {
+        return ocrAdapter != null ? ocrAdapter.getResumoCacheVisual() : "Cache visual indisponivel";
+    }
+
+    /**
+     * Imagens descartadas por hidrômetro em rajadas de envio (coalescência do pipeline).
+     */
+    public Map<String, Long> obterImagensCoalescidasPorHidrometro() {
+        return pipelineIngestao != null ? pipelineIngestao.getCoalescidasPorHidrometro() : Map.of();
+    }
+
     public void inicializarAdminPadrao() {
         if (adminProxyFachada != null) {
             try {
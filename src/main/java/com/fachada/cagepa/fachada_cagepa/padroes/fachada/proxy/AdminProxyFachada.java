@@ -4,6 +4,7 @@ import com.fachada.cagepa.fachada_cagepa.padroes.config.InvalidCredentialsExcept
 import com.fachada.cagepa.fachada_cagepa.padroes.config.JwtTokenProvider;
 import com.fachada.cagepa.fachada_cagepa.padroes.fachada.PainelCagepaFacade;
 import com.fachada.cagepa.fachada_cagepa.padroes.autenticacao.AdministradorService;
+import com.fachada.cagepa.fachada_cagepa.padroes.autenticacao.IdentidadeServicoIngestao;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
@@ -20,16 +21,15 @@ public class AdminProxyFachada {
     @Autowired
     private ApplicationContext applicationContext;
 
+    @Autowired
+    private IdentidadeServicoIngestao identidadeServicoIngestao;
+
     private String tokenAtual;
     private Long adminAtualId;
     private String adminAtualUsername;
 
     public void login(String username, String password) throws InvalidCredentialsException {
-        this.tokenAtual = administradorService.login(username, password);
-        this.adminAtualId = jwtTokenProvider.extrairAdminId(this.tokenAtual);
-        this.adminAtualUsername = jwtTokenProvider.extrairUsername(this.tokenAtual);
-
-        System.out.println("Login realizado com sucesso para: " + this.adminAtualUsername);
+        loginSemMonitoramento(username, password);
         
         // Iniciar monitoramento apos login bem-sucedido
         try {
@@ -42,6 +42,17 @@ public class AdminProxyFachada {
         }
     }
 
+    /**
+     * Autentica sem iniciar o monitoramento de diretorios (usado pelo backfill em linha de comando).
+     */
+    public void loginSemMonitoramento(String username, String password) throws InvalidCredentialsException {
+        this.tokenAtual = administradorService.login(username, password);
+        this.adminAtualId = jwtTokenProvider.extrairAdminId(this.tokenAtual);
+        this.adminAtualUsername = jwtTokenProvider.extrairUsername(this.tokenAtual);
+
+        System.out.println("Login realizado com sucesso para: " + this.adminAtualUsername);
+    }
+
     public void criarAdministrador(String username, String password) throws InvalidCredentialsException {
         if (!estaAutenticado()) {
             throw new InvalidCredentialsException("Nao autenticado. Realize login primeiro.");
@@ -69,7 +80,13 @@ public class AdminProxyFachada {
         this.adminAtualId = null;
         this.adminAtualUsername = null;
         System.out.println("Logout realizado com sucesso.");
-        
+
+        // Com identidade de servico, a ingestao segue sem sessao interativa
+        if (identidadeServicoIngestao.estaAtiva()) {
+            System.out.println("Ingestao de leituras continua sob a identidade de servico.");
+            return;
+        }
+
         // Parar monitoramento apos logout
         try {
             PainelCagepaFacade painelFacade = applicationContext.getBean(PainelCagepaFacade.class);
@@ -85,6 +102,14 @@ public class AdminProxyFachada {
         return this.tokenAtual != null && !this.tokenAtual.isEmpty();
     }
 
+    /**
+     * Indica se imagens podem ser ingeridas: há um administrador logado ou a
+     * identidade de serviço da ingestão está ativa.
+     */
+    public boolean ingestaoAutorizada() {
+        return estaAutenticado() || identidadeServicoIngestao.estaAtiva();
+    }
+
     public String obterToken() {
         return this.tokenAtual;
     }
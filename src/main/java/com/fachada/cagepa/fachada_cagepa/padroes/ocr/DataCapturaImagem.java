@@ -0,0 +1,166 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Instante em que a foto do hidrômetro foi tirada, usado como timestamp da leitura.
+ *
+ * Lê o DateTimeOriginal do EXIF (JPEG e TIFF) percorrendo apenas o cabeçalho do arquivo,
+ * sem decodificar a imagem; sem EXIF válido, usa o mtime do arquivo. Assim o timestamp
+ * não depende de quando a imagem foi processada, e um acervo pode ser ingerido em
+ * qualquer ordem.
+ */
+@Component
+public class DataCapturaImagem {
+
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATA_ORIGINAL = 0x9003;
+    private static final int TAG_DATA_DIGITALIZACAO = 0x9004;
+    private static final int TIPO_ASCII = 2;
+    private static final int MARCADOR_APP1 = 0xE1;
+    private static final int MARCADOR_SOS = 0xDA;
+    private static final byte[] ASSINATURA_EXIF = {'E', 'x', 'i', 'f', 0, 0};
+    private static final DateTimeFormatter FORMATO_EXIF = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+    // Relogio da camera adiantado nao pode empurrar a leitura para o futuro
+    private static final long TOLERANCIA_FUTURO_HORAS = 24;
+
+    /**
+     * @return data de captura pelo EXIF ou, na falta dele, pelo mtime do arquivo
+     */
+    public LocalDateTime extrair(File arquivo) {
+        LocalDateTime dataExif = lerExif(arquivo);
+        if (dataExif != null && dataExif.isBefore(LocalDateTime.now().plusHours(TOLERANCIA_FUTURO_HORAS))) {
+            return dataExif;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(arquivo.lastModified()), ZoneId.systemDefault());
+    }
+
+    private LocalDateTime lerExif(File arquivo) {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer tiff = localizarTiff(canal);
+            return tiff != null ? lerDataTiff(tiff) : null;
+        } catch (IOException | RuntimeException e) {
+            // EXIF ausente ou corrompido: o chamador usa o mtime
+            return null;
+        }
+    }
+
+    /**
+     * Retorna a estrutura TIFF que contém os IFDs: o segmento APP1 "Exif" de um JPEG
+     * ou o próprio arquivo, no caso de um TIFF.
+     */
+    private ByteBuffer localizarTiff(FileChannel canal) throws IOException {
+        ByteBuffer inicio = ler(canal, 0, 4);
+        if (inicio == null) {
+            return null;
+        }
+        int b0 = inicio.get(0) & 0xFF;
+        int b1 = inicio.get(1) & 0xFF;
+        if ((b0 == 'I' && b1 == 'I') || (b0 == 'M' && b1 == 'M')) {
+            // Os IFDs de um TIFF podem estar no fim do arquivo: mapeia e deixa o SO ler so as paginas usadas
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        if (b0 != 0xFF || b1 != 0xD8) {
+            return null;
+        }
+
+        long posicao = 2;
+        while (true) {
+            ByteBuffer marcador = ler(canal, posicao, 4);
+            if (marcador == null || (marcador.get(0) & 0xFF) != 0xFF) {
+                return null;
+            }
+            int tipo = marcador.get(1) & 0xFF;
+            int tamanho = marcador.getShort(2) & 0xFFFF;
+            if (tipo == MARCADOR_SOS || tamanho < 2) {
+                return null;
+            }
+            if (tipo == MARCADOR_APP1 && tamanho > 2 + ASSINATURA_EXIF.length) {
+                ByteBuffer segmento = ler(canal, posicao + 4, tamanho - 2);
+                if (segmento != null && comecaComExif(segmento)) {
+                    return segmento.position(ASSINATURA_EXIF.length).slice();
+                }
+            }
+            posicao += 2 + tamanho;
+        }
+    }
+
+    private LocalDateTime lerDataTiff(ByteBuffer tiff) {
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd0 = tiff.getInt(4);
+        int exifIfd = -1;
+        for (int i = 0, n = tiff.getShort(ifd0) & 0xFFFF; i < n; i++) {
+            int entrada = ifd0 + 2 + i * 12;
+            if ((tiff.getShort(entrada) & 0xFFFF) == TAG_EXIF_IFD) {
+                exifIfd = tiff.getInt(entrada + 8);
+                break;
+            }
+        }
+        if (exifIfd < 0) {
+            return null;
+        }
+
+        LocalDateTime digitalizacao = null;
+        for (int i = 0, n = tiff.getShort(exifIfd) & 0xFFFF; i < n; i++) {
+            int entrada = exifIfd + 2 + i * 12;
+            int tag = tiff.getShort(entrada) & 0xFFFF;
+            if (tag == TAG_DATA_ORIGINAL) {
+                LocalDateTime original = lerData(tiff, entrada);
+                if (original != null) {
+                    return original;
+                }
+            } else if (tag == TAG_DATA_DIGITALIZACAO) {
+                digitalizacao = lerData(tiff, entrada);
+            }
+        }
+        return digitalizacao;
+    }
+
+    private static LocalDateTime lerData(ByteBuffer tiff, int entrada) {
+        // "AAAA:MM:DD HH:MM:SS\0": 20 bytes, sempre fora da entrada do IFD
+        if ((tiff.getShort(entrada + 2) & 0xFFFF) != TIPO_ASCII || tiff.getInt(entrada + 4) < 19) {
+            return null;
+        }
+        byte[] texto = new byte[19];
+        try {
+            tiff.get(tiff.getInt(entrada + 8), texto);
+            return LocalDateTime.parse(new String(texto, StandardCharsets.US_ASCII), FORMATO_EXIF);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | DateTimeParseException e) {
+            // Cameras sem relogio gravam "0000:00:00 00:00:00"
+            return null;
+        }
+    }
+
+    private static boolean comecaComExif(ByteBuffer segmento) {
+        for (int i = 0; i < ASSINATURA_EXIF.length; i++) {
+            if (segmento.get(i) != ASSINATURA_EXIF[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer ler(FileChannel canal, long posicao, int tamanho) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(tamanho);
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicao + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+}
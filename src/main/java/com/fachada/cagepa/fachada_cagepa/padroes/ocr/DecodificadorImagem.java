@@ -0,0 +1,76 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.adapter.OCRAdapter;
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.RegiaoImagem;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodifica apenas a parte do quadro usada pelas estratégias de OCR.
+ * Com ImageReadParam.setSourceRegion, o leitor descarta os pixels fora do retângulo
+ * que envolve as ROIs, e a imagem em memória fica com uma fração do tamanho do quadro.
+ */
+@Component
+public class DecodificadorImagem {
+
+    private final OCRAdapter ocrAdapter;
+
+    public DecodificadorImagem(OCRAdapter ocrAdapter) {
+        this.ocrAdapter = ocrAdapter;
+    }
+
+    /**
+     * @return a região decodificada, marcada com sua origem no quadro, ou null se o
+     *         arquivo não puder ser lido ou não contiver as ROIs
+     */
+    public BufferedImage decodificar(File arquivo) throws IOException {
+        try (ImageInputStream entrada = ImageIO.createImageInputStream(arquivo)) {
+            if (entrada == null) {
+                return null;
+            }
+
+            Iterator<ImageReader> leitores = ImageIO.getImageReaders(entrada);
+            if (!leitores.hasNext()) {
+                return null;
+            }
+
+            ImageReader leitor = leitores.next();
+            try {
+                leitor.setInput(entrada, true, true);
+                ImageReadParam parametros = leitor.getDefaultReadParam();
+
+                Rectangle regiao = ocrAdapter.getDecodeRegion();
+                if (regiao == null) {
+                    return leitor.read(0, parametros);
+                }
+
+                Rectangle quadro = new Rectangle(0, 0, leitor.getWidth(0), leitor.getHeight(0));
+                Rectangle limite = regiao.intersection(quadro);
+                if (limite.isEmpty()) {
+                    System.err.println("Aviso: Imagem menor que as regioes de leitura: " + arquivo.getName());
+                    return null;
+                }
+
+                parametros.setSourceRegion(limite);
+                int subamostragem = ocrAdapter.getDecodeSubsampling();
+                if (subamostragem > 1) {
+                    parametros.setSourceSubsampling(subamostragem, subamostragem, 0, 0);
+                }
+
+                BufferedImage imagem = leitor.read(0, parametros);
+                return RegiaoImagem.comOrigem(imagem, limite.getLocation(), subamostragem);
+            } finally {
+                leitor.dispose();
+            }
+        }
+    }
+}
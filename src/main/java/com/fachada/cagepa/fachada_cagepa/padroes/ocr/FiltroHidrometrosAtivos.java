@@ -0,0 +1,128 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import com.fachada.cagepa.fachada_cagepa.infra.repositories.HidrometroRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conjunto em memória dos SHAs de hidrômetros cadastrados e ativos.
+ * Imagens de hidrômetros desconhecidos ou desativados são rejeitadas na descoberta sem
+ * consulta ao banco. O conjunto é carregado na inicialização e mantido pelo HidrometroService;
+ * se a carga falhar, a verificação volta a consultar o banco.
+ *
+ * Com o cluster habilitado, cadastros e desativações feitos em outra instância não passam pelo
+ * HidrometroService local: o conjunto é recarregado do banco periodicamente e um SHA ausente
+ * dele é confirmado no banco antes de a imagem ser rejeitada. Uma desativação feita em outra
+ * instância leva até um intervalo de recarga para valer aqui.
+ */
+@Component
+public class FiltroHidrometrosAtivos {
+
+    private final HidrometroRepository hidrometroRepository;
+    private final boolean cluster;
+    private final long recargaMs;
+    // Substituido inteiro a cada recarga, para que a verificacao nunca veja um conjunto pela metade
+    private volatile Set<String> shasAtivos = ConcurrentHashMap.newKeySet();
+    private volatile boolean carregado = false;
+    private ScheduledExecutorService recarga;
+
+    public FiltroHidrometrosAtivos(HidrometroRepository hidrometroRepository,
+                                   @Value("${cagepa.cluster.habilitado:false}") boolean cluster,
+                                   @Value("${cagepa.cluster.filtro-recarga-ms:30000}") long recargaMs) {
+        this.hidrometroRepository = hidrometroRepository;
+        this.cluster = cluster;
+        this.recargaMs = recargaMs;
+    }
+
+    @PostConstruct
+    public void carregar() {
+        recarregar();
+        if (carregado) {
+            System.out.println("[FiltroHidrometrosAtivos] " + shasAtivos.size() + " hidrometros ativos carregados");
+        }
+        if (cluster && recargaMs > 0) {
+            recarga = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Filtro-hidrometros");
+                thread.setDaemon(true);
+                return thread;
+            });
+            recarga.scheduleWithFixedDelay(this::recarregar, recargaMs, recargaMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void parar() {
+        if (recarga != null) {
+            recarga.shutdownNow();
+        }
+    }
+
+    public boolean estaAtivo(String sha) {
+        if (carregado && shasAtivos.contains(sha)) {
+            return true;
+        }
+        if (carregado && !cluster) {
+            return false;
+        }
+        // Sem carga, ou em cluster, onde o hidrometro pode ter sido cadastrado por outra instancia
+        boolean ativo = hidrometroRepository.existsByShaAndAtivoTrue(sha);
+        if (ativo && carregado) {
+            shasAtivos.add(sha);
+        }
+        return ativo;
+    }
+
+    /**
+     * Inclui o SHA quando a transação corrente (cadastro ou ativação) for confirmada.
+     */
+    public void incluir(String sha) {
+        aposCommit(() -> shasAtivos.add(sha));
+    }
+
+    /**
+     * Remove o SHA quando a transação corrente (desativação) for confirmada.
+     */
+    public void remover(String sha) {
+        aposCommit(() -> shasAtivos.remove(sha));
+    }
+
+    public int getTamanho() {
+        return shasAtivos.size();
+    }
+
+    private void recarregar() {
+        try {
+            Set<String> novos = ConcurrentHashMap.newKeySet();
+            novos.addAll(hidrometroRepository.findShasAtivos());
+            shasAtivos = novos;
+            carregado = true;
+        } catch (RuntimeException e) {
+            // Mantem o conjunto anterior; sem nenhuma carga, a verificacao consulta o banco
+            System.err.println("[FiltroHidrometrosAtivos] Nao foi possivel carregar hidrometros"
+                    + (carregado ? ", mantendo o conjunto anterior: " : ", consultando o banco: ") + e.getMessage());
+        }
+    }
+
+    private void aposCommit(Runnable acao) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            acao.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                acao.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,71 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.time.LocalDateTime;
+
+/**
+ * Imagem de hidrômetro em trânsito entre os estágios de descoberta, decodificação e OCR.
+ * A imagem decodificada é liberada assim que o OCR termina, para que
+ * apenas os itens em decodificação/OCR ocupem memória significativa.
+ *
+ * Uma imagem com conteúdo idêntico a outra já ingerida sai da descoberta marcada como
+ * repetida, sem SHA nem data de captura, apenas para que o pipeline registre o desfecho.
+ */
+public class ImagemHidrometro {
+    private final File arquivo;
+    private final String shaHidrometro;
+    private final long hashConteudo;
+    private final LocalDateTime dataCaptura;
+    private final boolean conteudoRepetido;
+    private BufferedImage imagem;
+
+    public ImagemHidrometro(File arquivo, String shaHidrometro, long hashConteudo,
+                            LocalDateTime dataCaptura) {
+        this(arquivo, shaHidrometro, hashConteudo, dataCaptura, false);
+    }
+
+    private ImagemHidrometro(File arquivo, String shaHidrometro, long hashConteudo,
+                             LocalDateTime dataCaptura, boolean conteudoRepetido) {
+        this.arquivo = arquivo;
+        this.shaHidrometro = shaHidrometro;
+        this.hashConteudo = hashConteudo;
+        this.dataCaptura = dataCaptura;
+        this.conteudoRepetido = conteudoRepetido;
+    }
+
+    /**
+     * Imagem cujo conteúdo já foi ingerido: não deve ser decodificada.
+     */
+    public static ImagemHidrometro repetida(File arquivo, long hashConteudo) {
+        return new ImagemHidrometro(arquivo, null, hashConteudo, null, true);
+    }
+
+    public File getArquivo() {
+        return arquivo;
+    }
+
+    public String getShaHidrometro() {
+        return shaHidrometro;
+    }
+
+    public long getHashConteudo() {
+        return hashConteudo;
+    }
+
+    public LocalDateTime getDataCaptura() {
+        return dataCaptura;
+    }
+
+    public boolean isConteudoRepetido() {
+        return conteudoRepetido;
+    }
+
+    public BufferedImage getImagem() {
+        return imagem;
+    }
+
+    public void setImagem(BufferedImage imagem) {
+        this.imagem = imagem;
+    }
+}
@@ -0,0 +1,82 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import com.fachada.cagepa.fachada_cagepa.infra.indice.TabelaHashMapeada;
+import com.fachada.cagepa.fachada_cagepa.infra.indice.XxHash64;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Índice persistente dos conteúdos de imagem já ingeridos, identificados pelo xxHash64 dos bytes.
+ * Uma foto reenviada pelo gateway, com o mesmo nome ou como cópia, é descartada
+ * antes da decodificação e do OCR.
+ */
+@Component
+public class IndiceConteudoImagem {
+
+    /** Hash usado quando o conteúdo não pôde ser lido; nunca é registrado. */
+    public static final long SEM_HASH = 0L;
+
+    private static final String NOME_ARQUIVO = "conteudo-imagens.idx";
+
+    private final TabelaHashMapeada tabela;
+
+    public IndiceConteudoImagem(@Value("${cagepa.indice.diretorio:.cagepa}") String diretorio,
+                                @Value("${cagepa.indice.conteudo.capacidade-inicial:65536}") int capacidadeInicial) {
+        Path arquivo = Paths.get(diretorio, NOME_ARQUIVO);
+        try {
+            this.tabela = TabelaHashMapeada.abrir(arquivo, capacidadeInicial);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao abrir indice de conteudo: " + arquivo, e);
+        }
+        System.out.println("[IndiceConteudoImagem] " + tabela.getQuantidade() + " imagens ja ingeridas em " + arquivo);
+    }
+
+    /**
+     * Calcula o hash do conteúdo do arquivo.
+     *
+     * @return hash do conteúdo, ou SEM_HASH se o arquivo não pôde ser lido
+     */
+    public long calcularHash(File arquivo) {
+        try {
+            long hash = XxHash64.hash(arquivo.toPath());
+            return hash == SEM_HASH ? 1L : hash;
+        } catch (IOException e) {
+            System.err.println("Aviso: Nao foi possivel calcular o hash de " + arquivo.getName() + ": " + e.getMessage());
+            return SEM_HASH;
+        }
+    }
+
+    public boolean jaIngerido(long hash) {
+        return hash != SEM_HASH && tabela.contem(hash);
+    }
+
+    /**
+     * Marca o conteúdo como ingerido, com o instante do registro.
+     */
+    public void registrar(long hash) {
+        if (hash == SEM_HASH) {
+            return;
+        }
+        try {
+            tabela.colocar(hash, System.currentTimeMillis());
+        } catch (IOException e) {
+            System.err.println("Aviso: Erro ao atualizar indice de conteudo: " + e.getMessage());
+        }
+    }
+
+    public long getQuantidade() {
+        return tabela.getQuantidade();
+    }
+
+    @PreDestroy
+    public void fechar() {
+        tabela.close();
+    }
+}
@@ -0,0 +1,106 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import com.fachada.cagepa.fachada_cagepa.infra.entities.LeituraDoHidrometro;
+import com.fachada.cagepa.fachada_cagepa.infra.repositories.LeituraDoHidrometroRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leitura mais recente (pela data de captura) de cada hidrômetro, em memória, para a
+ * verificação de monotonicidade. É aquecido em segundo plano com uma única consulta
+ * agregada; até lá, cada consulta busca a última leitura do hidrômetro no banco.
+ * Aquecimento e gravações concorrentes são combinados pelo maior timestamp.
+ */
+@Component
+public class IndiceUltimaLeitura {
+
+    private final LeituraDoHidrometroRepository repository;
+    private final Map<String, UltimaLeitura> ultimaPorSha = new ConcurrentHashMap<>();
+    private volatile boolean aquecido = false;
+
+    public IndiceUltimaLeitura(LeituraDoHidrometroRepository repository) {
+        this.repository = repository;
+    }
+
+    @PostConstruct
+    public void iniciarAquecimento() {
+        Thread thread = new Thread(this::aquecer, "IndiceUltimaLeitura-Aquecimento");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Leitura mais recente registrada do hidrômetro.
+     *
+     * @return leitura, ou null se o hidrômetro ainda não tem leituras
+     */
+    public UltimaLeitura obterUltima(String shaHidrometro) {
+        UltimaLeitura ultima = ultimaPorSha.get(shaHidrometro);
+        if (ultima != null || aquecido) {
+            return ultima;
+        }
+
+        LeituraDoHidrometro leitura = repository.findLastBySha(shaHidrometro);
+        if (leitura == null) {
+            return null;
+        }
+        return ultimaPorSha.merge(shaHidrometro, new UltimaLeitura(leitura.getTimestamp(), leitura.getValorLeitura()),
+                UltimaLeitura::maisRecente);
+    }
+
+    /**
+     * Atualiza o índice com uma leitura efetivamente gravada. Leituras atrasadas
+     * (anteriores à mais recente) não alteram o índice.
+     */
+    public void atualizar(String shaHidrometro, LocalDateTime timestamp, long valorLeitura) {
+        ultimaPorSha.merge(shaHidrometro, new UltimaLeitura(timestamp, valorLeitura), UltimaLeitura::maisRecente);
+    }
+
+    /**
+     * Ajusta o índice depois que uma leitura atrasada removeu as posteriores de valor menor ou
+     * igual: se a leitura do índice estava entre elas, a atrasada passa a ser a mais recente.
+     * Hidrômetros fora do índice continuam sendo buscados no banco.
+     */
+    public void atualizarAposRemocao(String shaHidrometro, LocalDateTime timestamp, long valorLeitura) {
+        ultimaPorSha.computeIfPresent(shaHidrometro, (sha, atual) -> atual.valor() <= valorLeitura
+                ? new UltimaLeitura(timestamp, valorLeitura) : atual);
+    }
+
+    public boolean isAquecido() {
+        return aquecido;
+    }
+
+    public int getTamanho() {
+        return ultimaPorSha.size();
+    }
+
+    private void aquecer() {
+        try {
+            for (Object[] linha : repository.findUltimaLeituraPorSha()) {
+                if (linha[1] != null && linha[2] != null) {
+                    ultimaPorSha.merge((String) linha[0],
+                            new UltimaLeitura((LocalDateTime) linha[1], ((Number) linha[2]).longValue()),
+                            UltimaLeitura::maisRecente);
+                }
+            }
+            aquecido = true;
+            System.out.println("[IndiceUltimaLeitura] Ultimas leituras carregadas para " + ultimaPorSha.size() + " hidrometros");
+        } catch (RuntimeException e) {
+            System.err.println("[IndiceUltimaLeitura] Nao foi possivel aquecer o indice, usando consultas ao banco: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Timestamp e valor da leitura mais recente de um hidrômetro.
+     */
+    public record UltimaLeitura(LocalDateTime timestamp, long valor) {
+
+        static UltimaLeitura maisRecente(UltimaLeitura atual, UltimaLeitura nova) {
+            return nova.timestamp.isAfter(atual.timestamp) ? nova : atual;
+        }
+    }
+}
@@ -1,111 +1,225 @@
 package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
 
-import com.fachada.cagepa.fachada_cagepa.infra.entities.LeituraDoHidrometro;
-import com.fachada.cagepa.fachada_cagepa.infra.repositories.HidrometroRepository;
-import com.fachada.cagepa.fachada_cagepa.infra.repositories.LeituraDoHidrometroRepository;
 import com.fachada.cagepa.fachada_cagepa.padroes.adapter.OCRAdapter;
+import com.fachada.cagepa.fachada_cagepa.padroes.adapter.OCROutcome;
 import com.fachada.cagepa.fachada_cagepa.padroes.fachada.proxy.AdminProxyFachada;
+import com.fachada.cagepa.fachada_cagepa.padroes.pipeline.MetricasIngestao;
+import net.sourceforge.tess4j.Tesseract;
 
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
 public class LeituraHidrometroService {
 
-    private final LeituraDoHidrometroRepository repository;
+    private final RegistroLeituraService registroLeituraService;
     private final OCRAdapter ocrAdapter;
     private final AdminProxyFachada adminProxyFachada;
-    private final HidrometroRepository hidrometroRepository;
-
-    public LeituraHidrometroService(LeituraDoHidrometroRepository repository, OCRAdapter ocrAdapter,
-                                    AdminProxyFachada adminProxyFachada, HidrometroRepository hidrometroRepository) {
-        this.repository = repository;
+    private final FiltroHidrometrosAtivos filtroHidrometrosAtivos;
+    private final TesseractPool tesseractPool;
+    private final DecodificadorImagem decodificadorImagem;
+    private final IndiceConteudoImagem indiceConteudo;
+    private final DataCapturaImagem dataCapturaImagem;
+    private final MetricasIngestao metricas;
+
+    public LeituraHidrometroService(RegistroLeituraService registroLeituraService, OCRAdapter ocrAdapter,
+                                    AdminProxyFachada adminProxyFachada, FiltroHidrometrosAtivos filtroHidrometrosAtivos,
+                                    TesseractPool tesseractPool, DecodificadorImagem decodificadorImagem,
+                                    IndiceConteudoImagem indiceConteudo, DataCapturaImagem dataCapturaImagem,
+                                    MetricasIngestao metricas) {
+        this.registroLeituraService = registroLeituraService;
         this.ocrAdapter = ocrAdapter;
         this.adminProxyFachada = adminProxyFachada;
-        this.hidrometroRepository = hidrometroRepository;
+        this.filtroHidrometrosAtivos = filtroHidrometrosAtivos;
+        this.tesseractPool = tesseractPool;
+        this.decodificadorImagem = decodificadorImagem;
+        this.indiceConteudo = indiceConteudo;
+        this.dataCapturaImagem = dataCapturaImagem;
+        this.metricas = metricas;
     }
 
-    @Transactional
+    /**
+     * Processa uma imagem de ponta a ponta, na thread chamadora.
+     * A decodificação e o OCR rodam sem transação; apenas a validação e o insert
+     * ocupam uma conexão do pool. O pipeline de ingestão executa as mesmas fases em estágios.
+     */
     public void processarImagemHidrometro(File imageFile) {
         try {
-            System.out.println("==> Iniciando processamento: " + imageFile.getName());
-
-            // Validar se admin está autenticado
-            if (!adminProxyFachada.estaAutenticado()) {
-                System.err.println("Aviso: Admin nao autenticado. Leitura nao sera registrada: " + imageFile.getName());
+            ResultadoOCR resultado = reconhecerImagem(imageFile);
+            if (resultado == null) {
                 return;
             }
-
-            if (!imageFile.exists() || !imageFile.isFile()) {
-                System.err.println("Aviso: Arquivo nao encontrado ou invalido: " + imageFile.getAbsolutePath());
+            if (resultado.isSemAlteracao()) {
+                // Mesma leitura da ultima imagem: nada a validar nem gravar
+                indiceConteudo.registrar(resultado.getHashConteudo());
                 return;
             }
+            registrarLeitura(resultado);
+        } catch (Exception e) {
+            System.err.println("Aviso: Erro ao processar imagem " + imageFile.getName() + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            String filename = imageFile.getName();
-            String shaHidrometro = ocrAdapter.extractMeterId(filename);
-            System.out.println("==> SHA extraido: " + shaHidrometro + " (de: " + filename + ")");
-
-            // Validar se o SHA está cadastrado no banco
-            if (!hidrometroRepository.existsBySha(shaHidrometro)) {
-                System.err.println("Aviso: SHA do hidrometro nao encontrado no banco de dados: " + shaHidrometro);
-                return;
-            }
+    /**
+     * Fase não transacional: identifica, decodifica e aplica OCR à imagem.
+     *
+     * @return resultado do OCR, ou null se a imagem deve ser descartada
+     */
+    public ResultadoOCR reconhecerImagem(File imageFile) {
+        ImagemHidrometro item = identificarImagem(imageFile);
+        if (item == null || item.isConteudoRepetido() || decodificarImagem(item) == null) {
+            return null;
+        }
+        return reconhecerLeitura(item);
+    }
 
-            BufferedImage image = ImageIO.read(imageFile);
-            if (image == null) {
-                System.err.println("Aviso: Nao foi possivel ler a imagem: " + filename);
-                return;
-            }
+    /**
+     * Etapa de descoberta: verifica sessão, arquivo, SHA cadastrado e conteúdo repetido
+     * e lê a data de captura, sem decodificar a imagem.
+     *
+     * @return item pronto para decodificação, item marcado como repetido se o conteúdo já foi
+     * ingerido, ou null se a imagem deve ser descartada
+     */
+    public ImagemHidrometro identificarImagem(File imageFile) {
+        System.out.println("==> Iniciando processamento: " + imageFile.getName());
+
+        // Validar se ha admin autenticado ou identidade de servico ativa
+        if (!adminProxyFachada.ingestaoAutorizada()) {
+            System.err.println("Aviso: Admin nao autenticado. Leitura nao sera registrada: " + imageFile.getName());
+            metricas.descartada(MetricasIngestao.DESCARTE_NAO_AUTORIZADA);
+            return null;
+        }
 
-            Long valorLeitura = ocrAdapter.tryExtractMeterValue(image);
-            System.out.println("==> Valor extraido: " + valorLeitura);
+        if (!imageFile.exists() || !imageFile.isFile()) {
+            System.err.println("Aviso: Arquivo nao encontrado ou invalido: " + imageFile.getAbsolutePath());
+            metricas.descartada(MetricasIngestao.DESCARTE_ARQUIVO_AUSENTE);
+            return null;
+        }
 
-            if (valorLeitura == null) {
-                System.err.println("Aviso: Nao foi possivel extrair o valor do hidrometro: " + filename);
-                return;
-            }
+        String filename = imageFile.getName();
+        String shaHidrometro = ocrAdapter.extractMeterId(filename);
+        System.out.println("==> SHA extraido: " + shaHidrometro + " (de: " + filename + ")");
 
-            if (!isValueGreaterThanLastReading(shaHidrometro, valorLeitura)) {
-                return;
-            }
+        // Validar se o SHA está cadastrado e ativo, sem ida ao banco; so o nome do arquivo e lido
+        if (!filtroHidrometrosAtivos.estaAtivo(shaHidrometro)) {
+            System.err.println("Aviso: SHA do hidrometro nao cadastrado ou inativo: " + shaHidrometro);
+            metricas.descartada(MetricasIngestao.DESCARTE_SHA_DESCONHECIDO);
+            return null;
+        }
 
-            String tipoHidrometro = ocrAdapter.determineMeterType(image);
-            System.out.println("==> Tipo: " + tipoHidrometro);
+        // Foto identica a uma ja ingerida (reenvio ou copia): nada a decodificar.
+        // O hash le o arquivo inteiro, por isso so roda para hidrometros ativos
+        long hashConteudo = indiceConteudo.calcularHash(imageFile);
+        if (indiceConteudo.jaIngerido(hashConteudo)) {
+            System.out.println("==> Conteudo ja processado, ignorando: " + imageFile.getName());
+            return ImagemHidrometro.repetida(imageFile, hashConteudo);
+        }
 
-            LeituraDoHidrometro leitura = LeituraDoHidrometro.builder()
-                    .shaHidrometro(shaHidrometro)
-                    .valorLeitura(valorLeitura)
-                    .timestamp(LocalDateTime.now())
-                    .tipoHidrometro(tipoHidrometro)
-                    .build();
+        // Instante da foto, e nao do processamento: a ordem de ingestao nao altera o consumo
+        LocalDateTime dataCaptura = dataCapturaImagem.extrair(imageFile);
 
-            repository.save(leitura);
-            System.out.println("==> Leitura registrada com sucesso: SHA=" + shaHidrometro + ", Valor=" + valorLeitura + ", Tipo=" + tipoHidrometro);
+        return new ImagemHidrometro(imageFile, shaHidrometro, hashConteudo, dataCaptura);
+    }
 
+    /**
+     * Etapa de decodificação: carrega do disco apenas a região usada pelo OCR.
+     */
+    public ImagemHidrometro decodificarImagem(ImagemHidrometro item) {
+        long inicio = System.nanoTime();
+        try {
+            BufferedImage image = decodificadorImagem.decodificar(item.getArquivo());
+            if (image == null) {
+                System.err.println("Aviso: Nao foi possivel ler a imagem: " + item.getArquivo().getName());
+                return null;
+            }
+            item.setImagem(image);
+            return item;
         } catch (Exception e) {
-            System.err.println("Aviso: Erro ao processar imagem " + imageFile.getName() + ": " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Aviso: Erro ao ler imagem " + item.getArquivo().getName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            metricas.registrarDecodificacao(System.nanoTime() - inicio);
         }
     }
 
-    private boolean isValueGreaterThanLastReading(String shaHidrometro, Long novoValor) {
-        List<LeituraDoHidrometro> leituras = repository.findByShaHidrometro(shaHidrometro);
-        
-        if (leituras.isEmpty()) {
-            return true;
+    /**
+     * Etapa de OCR: extrai valor e tipo usando uma engine emprestada do pool.
+     * A imagem decodificada é liberada ao final.
+     */
+    public ResultadoOCR reconhecerLeitura(ImagemHidrometro item) {
+        Tesseract tesseract = null;
+        try {
+            // Engine exclusiva desta thread enquanto durar o OCR
+            tesseract = tesseractPool.emprestar();
+            long inicio = System.nanoTime();
+            OCROutcome outcome = ocrAdapter.extractReading(item.getShaHidrometro(), item.getImagem(), tesseract);
+            metricas.registrarOcr(System.nanoTime() - inicio);
+            System.out.println("==> Valor extraido: " + outcome.getValue());
+
+            if (!outcome.isRecognized()) {
+                System.err.println("Aviso: Nao foi possivel extrair o valor do hidrometro: " + item.getArquivo().getName());
+                return null;
+            }
+
+            System.out.println("==> Tipo: " + outcome.getMeterType());
+
+            return new ResultadoOCR(item.getArquivo(), item.getShaHidrometro(), outcome.getValue(), outcome.getMeterType(),
+                    item.getHashConteudo(), item.getDataCaptura(), outcome.isReused());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Aviso: Processamento interrompido: " + item.getArquivo().getName());
+            return null;
+        } finally {
+            tesseractPool.devolver(tesseract);
+            item.setImagem(null);
+        }
+    }
+
+    /**
+     * Etapa de validação: descarta leituras incoerentes com as vizinhas no tempo e, sem
+     * consultar o banco, as que apenas repetem a última leitura (sem alteração).
+     */
+    public ResultadoOCR validarLeitura(ResultadoOCR resultado) {
+        if (resultado.isSemAlteracao()) {
+            indiceConteudo.registrar(resultado.getHashConteudo());
+            return null;
+        }
+        if (!registroLeituraService.leituraCoerente(resultado.getShaHidrometro(), resultado.getValorLeitura(),
+                resultado.getDataCaptura())) {
+            indiceConteudo.registrar(resultado.getHashConteudo());
+            return null;
         }
+        return resultado;
+    }
 
-        Long ultimaLeitura = leituras.stream()
-                .mapToLong(LeituraDoHidrometro::getValorLeitura)
-                .max()
-                .orElse(0L);
+    /**
+     * Fase transacional: revalida e grava a leitura em uma transação curta.
+     * Outra leitura do mesmo hidrometro pode ter sido gravada depois da validacao.
+     */
+    public boolean registrarLeitura(ResultadoOCR resultado) {
+        return registrarLeituras(List.of(resultado)).get(0) != null;
+    }
 
-        return novoValor > ultimaLeitura;
+    /**
+     * Fase transacional em lote: grava as leituras que ainda são coerentes em uma única transação.
+     *
+     * @return para cada resultado, na mesma ordem, o próprio resultado se gravado ou null se rejeitado
+     */
+    public List<ResultadoOCR> registrarLeituras(List<ResultadoOCR> resultados) {
+        List<Boolean> gravadas = registroLeituraService.registrarLote(resultados);
+        List<ResultadoOCR> saidas = new ArrayList<>(resultados.size());
+        for (int i = 0; i < resultados.size(); i++) {
+            ResultadoOCR resultado = resultados.get(i);
+            // Gravada ou rejeitada, o mesmo conteudo daria o mesmo resultado
+            indiceConteudo.registrar(resultado.getHashConteudo());
+            saidas.add(gravadas.get(i) ? resultado : null);
+        }
+        return saidas;
     }
 }
@@ -0,0 +1,225 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import com.fachada.cagepa.fachada_cagepa.infra.entities.LeituraDoHidrometro;
+import com.fachada.cagepa.fachada_cagepa.infra.repositories.LeituraDoHidrometroRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Fase transacional da ingestão: valida e grava a leitura obtida pelo OCR.
+ * Fica em um bean separado para que a transação dure apenas a validação e o insert,
+ * e não a decodificação e o OCR da imagem.
+ */
+@Service
+public class RegistroLeituraService {
+
+    private final LeituraDoHidrometroRepository repository;
+    private final IndiceUltimaLeitura indiceUltimaLeitura;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean cluster;
+
+    public RegistroLeituraService(LeituraDoHidrometroRepository repository, IndiceUltimaLeitura indiceUltimaLeitura,
+                                  JdbcTemplate jdbcTemplate,
+                                  @Value("${cagepa.cluster.habilitado:false}") boolean cluster) {
+        this.repository = repository;
+        this.indiceUltimaLeitura = indiceUltimaLeitura;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cluster = cluster;
+    }
+
+    /**
+     * Posiciona a sequência de IDs acima das leituras já existentes, gravadas quando a
+     * tabela usava IDENTITY, para que os blocos alocados pelo Hibernate não colidam com elas.
+     */
+    @PostConstruct
+    public void alinharSequencia() {
+        try {
+            jdbcTemplate.queryForObject(
+                    "SELECT setval('" + LeituraDoHidrometro.SEQUENCIA + "', GREATEST("
+                            + "(SELECT COALESCE(MAX(id), 0) FROM leitura_dos_hidrometros) + " + LeituraDoHidrometro.ALOCACAO_IDS + ", "
+                            + "(SELECT last_value FROM " + LeituraDoHidrometro.SEQUENCIA + ")))",
+                    Long.class);
+        } catch (RuntimeException e) {
+            System.err.println("Aviso: Nao foi possivel alinhar a sequencia de leituras: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Valida a coerência com as leituras vizinhas e grava a leitura na mesma transação.
+     *
+     * @return true se a leitura foi gravada
+     */
+    @Transactional
+    public boolean registrar(ResultadoOCR resultado) {
+        return registrarLote(List.of(resultado)).get(0);
+    }
+
+    /**
+     * Valida e grava um lote de leituras em uma única transação. Com IDs de sequência,
+     * o Hibernate agrupa os inserts em batches JDBC.
+     *
+     * @return para cada resultado, na mesma ordem, true se a leitura foi gravada
+     */
+    @Transactional
+    public List<Boolean> registrarLote(List<ResultadoOCR> resultados) {
+        List<Boolean> gravadas = new ArrayList<>(resultados.size());
+        LeituraDoHidrometro[] aceitas = new LeituraDoHidrometro[resultados.size()];
+        // Posicoes das leituras do mesmo hidrometro aceitas no lote, ainda fora do banco e do indice
+        Map<String, List<Integer>> aceitasNoLote = new HashMap<>();
+        // Leituras atrasadas que removeram leituras posteriores ja gravadas
+        List<LeituraDoHidrometro> superaram = new ArrayList<>();
+        LocalDateTime agora = LocalDateTime.now();
+        bloquearHidrometros(resultados);
+
+        for (int i = 0; i < resultados.size(); i++) {
+            ResultadoOCR resultado = resultados.get(i);
+            String shaHidrometro = resultado.getShaHidrometro();
+            long valorLeitura = resultado.getValorLeitura();
+            LocalDateTime dataCaptura = resultado.getDataCaptura() != null ? resultado.getDataCaptura() : agora;
+            List<Integer> doHidrometro = aceitasNoLote.computeIfAbsent(shaHidrometro, k -> new ArrayList<>());
+
+            boolean coerente = maiorQueAnterioresDoLote(doHidrometro, aceitas, valorLeitura, dataCaptura)
+                    && leituraCoerente(shaHidrometro, valorLeitura, dataCaptura);
+            gravadas.add(coerente);
+            if (!coerente) {
+                continue;
+            }
+
+            LeituraDoHidrometro leitura = LeituraDoHidrometro.builder()
+                    .shaHidrometro(shaHidrometro)
+                    .valorLeitura(valorLeitura)
+                    .timestamp(dataCaptura)
+                    .tipoHidrometro(resultado.getTipoHidrometro())
+                    .build();
+            // As posteriores que esta leitura desmente saem do lote e do banco, como se ela tivesse chegado antes
+            boolean removeu = false;
+            for (Iterator<Integer> posicoes = doHidrometro.iterator(); posicoes.hasNext(); ) {
+                int j = posicoes.next();
+                if (superada(aceitas[j], valorLeitura, dataCaptura)) {
+                    removeu |= superaram.remove(aceitas[j]);
+                    aceitas[j] = null;
+                    gravadas.set(j, false);
+                    posicoes.remove();
+                }
+            }
+            if (atrasada(shaHidrometro, dataCaptura)) {
+                removeu |= repository.deleteLeiturasSuperadas(shaHidrometro, dataCaptura, valorLeitura) > 0;
+            }
+            if (removeu) {
+                superaram.add(leitura);
+            }
+            doHidrometro.add(i);
+            aceitas[i] = leitura;
+        }
+
+        List<LeituraDoHidrometro> leituras = new ArrayList<>();
+        for (LeituraDoHidrometro leitura : aceitas) {
+            if (leitura != null) {
+                leituras.add(leitura);
+            }
+        }
+        if (leituras.isEmpty() && superaram.isEmpty()) {
+            return gravadas;
+        }
+
+        repository.saveAll(leituras);
+        // O indice so reflete as leituras depois que elas estiverem de fato no banco
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (LeituraDoHidrometro leitura : superaram) {
+                    indiceUltimaLeitura.atualizarAposRemocao(leitura.getShaHidrometro(), leitura.getTimestamp(),
+                            leitura.getValorLeitura());
+                    System.out.println("==> Leituras posteriores desmentidas por leitura atrasada removidas: SHA="
+                            + leitura.getShaHidrometro() + ", Valor=" + leitura.getValorLeitura()
+                            + ", Captura=" + leitura.getTimestamp());
+                }
+                for (LeituraDoHidrometro leitura : leituras) {
+                    indiceUltimaLeitura.atualizar(leitura.getShaHidrometro(), leitura.getTimestamp(), leitura.getValorLeitura());
+                    System.out.println("==> Leitura registrada com sucesso: SHA=" + leitura.getShaHidrometro()
+                            + ", Valor=" + leitura.getValorLeitura() + ", Tipo=" + leitura.getTipoHidrometro()
+                            + ", Captura=" + leitura.getTimestamp());
+                }
+            }
+        });
+        return gravadas;
+    }
+
+    /**
+     * Verifica se o valor é maior que todas as leituras gravadas até a data de captura
+     * (inclusive). É a regra da ingestão em ordem cronológica: uma leitura só entra se supera
+     * tudo o que veio antes. Uma leitura atrasada (backlog, processamento paralelo) que passa
+     * nesta verificação desmente as posteriores de valor menor ou igual, que a gravação remove;
+     * assim o conjunto gravado é o mesmo em qualquer ordem de processamento. Só o desfecho
+     * no ledger das imagens removidas continua sendo o da primeira gravação.
+     *
+     * O caso comum, leitura mais nova que a última registrada, usa só o índice em memória;
+     * leituras atrasadas consultam o banco. Em cluster o índice não enxerga as gravações das
+     * outras instâncias, e a consulta vai sempre ao banco.
+     */
+    public boolean leituraCoerente(String shaHidrometro, Long novoValor, LocalDateTime dataCaptura) {
+        if (!atrasada(shaHidrometro, dataCaptura)) {
+            IndiceUltimaLeitura.UltimaLeitura ultima = indiceUltimaLeitura.obterUltima(shaHidrometro);
+            return ultima == null || novoValor > ultima.valor();
+        }
+        Long anterior = repository.findMaiorLeituraAte(shaHidrometro, dataCaptura);
+        return anterior == null || novoValor > anterior;
+    }
+
+    /**
+     * Indica se pode haver leituras gravadas no instante de captura ou depois dele; sem
+     * cluster, o índice em memória responde pelo caso comum.
+     */
+    private boolean atrasada(String shaHidrometro, LocalDateTime dataCaptura) {
+        if (cluster) {
+            return true;
+        }
+        IndiceUltimaLeitura.UltimaLeitura ultima = indiceUltimaLeitura.obterUltima(shaHidrometro);
+        return ultima != null && !dataCaptura.isAfter(ultima.timestamp());
+    }
+
+    /**
+     * Serializa a validação e a gravação de cada hidrômetro do lote com advisory locks da
+     * transação, adquiridos em ordem para não haver deadlock: entre instâncias do cluster e
+     * entre os workers de persistência de uma mesma instância.
+     */
+    private void bloquearHidrometros(List<ResultadoOCR> resultados) {
+        TreeSet<String> shas = new TreeSet<>();
+        resultados.forEach(resultado -> shas.add(resultado.getShaHidrometro()));
+        for (String sha : shas) {
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock(hashtext(?))", (RowCallbackHandler) rs -> { }, sha);
+        }
+    }
+
+    private static boolean maiorQueAnterioresDoLote(List<Integer> posicoes, LeituraDoHidrometro[] aceitas,
+                                                    long novoValor, LocalDateTime dataCaptura) {
+        for (int posicao : posicoes) {
+            LeituraDoHidrometro aceita = aceitas[posicao];
+            if (!aceita.getTimestamp().isAfter(dataCaptura) && novoValor <= aceita.getValorLeitura()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Leitura no instante de captura ou depois dele, com valor menor ou igual: desmentida.
+     */
+    private static boolean superada(LeituraDoHidrometro leitura, long novoValor, LocalDateTime dataCaptura) {
+        return !leitura.getTimestamp().isBefore(dataCaptura) && leitura.getValorLeitura() <= novoValor;
+    }
+}
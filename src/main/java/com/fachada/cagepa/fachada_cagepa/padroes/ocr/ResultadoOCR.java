@@ -0,0 +1,80 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import java.io.File;
+import java.time.LocalDateTime;
+
+/**
+ * Resultado da fase de decodificação/OCR, executada fora de transação.
+ * Carrega apenas o necessário para a fase transacional de validação e gravação;
+ * a imagem decodificada não faz parte do resultado.
+ *
+ * Um resultado sem alteração repete a última leitura do hidrômetro (janela de dígitos
+ * visualmente igual) e não passa pela validação nem pela gravação.
+ */
+public class ResultadoOCR {
+    private final File arquivo;
+    private final String shaHidrometro;
+    private final Long valorLeitura;
+    private final String tipoHidrometro;
+    private final long hashConteudo;
+    private final LocalDateTime dataCaptura;
+    private final boolean semAlteracao;
+
+    public ResultadoOCR(File arquivo, String shaHidrometro, Long valorLeitura, String tipoHidrometro,
+                        long hashConteudo, LocalDateTime dataCaptura) {
+        this(arquivo, shaHidrometro, valorLeitura, tipoHidrometro, hashConteudo, dataCaptura, false);
+    }
+
+    public ResultadoOCR(File arquivo, String shaHidrometro, Long valorLeitura, String tipoHidrometro,
+                        long hashConteudo, LocalDateTime dataCaptura, boolean semAlteracao) {
+        this.semAlteracao = semAlteracao;
+        this.arquivo = arquivo;
+        this.shaHidrometro = shaHidrometro;
+        this.valorLeitura = valorLeitura;
+        this.tipoHidrometro = tipoHidrometro;
+        this.hashConteudo = hashConteudo;
+        this.dataCaptura = dataCaptura;
+    }
+
+    public File getArquivo() {
+        return arquivo;
+    }
+
+    public String getShaHidrometro() {
+        return shaHidrometro;
+    }
+
+    public Long getValorLeitura() {
+        return valorLeitura;
+    }
+
+    public String getTipoHidrometro() {
+        return tipoHidrometro;
+    }
+
+    public long getHashConteudo() {
+        return hashConteudo;
+    }
+
+    /**
+     * Instante da foto (EXIF ou mtime), usado como timestamp da leitura.
+     */
+    public LocalDateTime getDataCaptura() {
+        return dataCaptura;
+    }
+
+    public boolean isSemAlteracao() {
+        return semAlteracao;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoOCR{" +
+                "arquivo=" + arquivo.getName() +
+                ", sha='" + shaHidrometro + '\'' +
+                ", valor=" + valorLeitura +
+                ", tipo='" + tipoHidrometro + '\'' +
+                ", captura=" + dataCaptura +
+                '}';
+    }
+}
@@ -0,0 +1,65 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.config.TesseractConfig;
+import net.sourceforge.tess4j.Tesseract;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool limitado de engines Tesseract pre-criadas.
+ * Como uma engine nao e thread-safe, cada thread de OCR toma uma engine
+ * emprestada, usa com exclusividade e a devolve ao final.
+ */
+@Component
+public class TesseractPool {
+
+    private final BlockingQueue<Tesseract> engines;
+    private final int tamanho;
+
+    public TesseractPool(@Value("${cagepa.ocr.pool-size:0}") int tamanhoConfigurado) {
+        this.tamanho = tamanhoConfigurado > 0 ? tamanhoConfigurado : Runtime.getRuntime().availableProcessors();
+        this.engines = new ArrayBlockingQueue<>(tamanho);
+
+        TesseractConfig config = TesseractConfig.getInstance();
+        for (int i = 0; i < tamanho; i++) {
+            engines.add(config.criarTesseract());
+        }
+        System.out.println("[TesseractPool] " + tamanho + " engines de OCR disponiveis");
+    }
+
+    /**
+     * Toma uma engine emprestada, aguardando se todas estiverem em uso.
+     */
+    public Tesseract emprestar() throws InterruptedException {
+        return engines.take();
+    }
+
+    /**
+     * Toma uma engine emprestada somente se houver uma livre.
+     *
+     * @return engine livre, ou null se todas estiverem em uso
+     */
+    public Tesseract tentarEmprestar() {
+        return engines.poll();
+    }
+
+    /**
+     * Devolve uma engine ao pool.
+     */
+    public void devolver(Tesseract tesseract) {
+        if (tesseract != null) {
+            engines.offer(tesseract);
+        }
+    }
+
+    public int getTamanho() {
+        return tamanho;
+    }
+
+    public int getDisponiveis() {
+        return engines.size();
+    }
+}
@@ -0,0 +1,294 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.config.InvalidCredentialsException;
+import com.fachada.cagepa.fachada_cagepa.padroes.fachada.proxy.AdminProxyFachada;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Importação em massa de imagens arquivadas, sem interação, iniciada pela linha de comando:
+ *
+ * <pre>
+ * java -jar fachada-cagepa.jar --backfill [--lista=arquivos.txt] [--usuario=admin --senha=...] dir1 dir2 foto.jpg ...
+ * </pre>
+ *
+ * Os arquivos vão direto para o pipeline de ingestão, sem passar pelo watcher nem pela janela
+ * de estabilidade, usando todos os workers de OCR e a persistência em lote. Como cada desfecho
+ * é gravado no ledger, uma execução interrompida pode ser repetida com os mesmos argumentos
+ * e retoma do ponto em que parou.
+ *
+ * O backfill acompanha apenas os arquivos que ele mesmo enfileirou: retentativas retomadas
+ * da execução anterior seguem pelo pipeline sem contar no progresso, e com o cluster habilitado
+ * a instância não arrenda imagens da tabela de reivindicações.
+ */
+@Component
+public class BackfillIngestao {
+
+    public static final String OPCAO = "--backfill";
+
+    private static final String OPCAO_LISTA = "--lista=";
+    private static final String OPCAO_USUARIO = "--usuario=";
+    private static final String OPCAO_SENHA = "--senha=";
+    private static final String ENTRADA = "backfill";
+
+    private final PipelineIngestao pipelineIngestao;
+    private final AdminProxyFachada adminProxyFachada;
+    private final long intervaloRelatorioMs;
+
+    public BackfillIngestao(PipelineIngestao pipelineIngestao, AdminProxyFachada adminProxyFachada,
+                            @Value("${cagepa.backfill.relatorio-ms:5000}") long intervaloRelatorioMs) {
+        this.pipelineIngestao = pipelineIngestao;
+        this.adminProxyFachada = adminProxyFachada;
+        this.intervaloRelatorioMs = intervaloRelatorioMs;
+    }
+
+    public static boolean solicitado(String... args) {
+        for (String arg : args) {
+            if (OPCAO.equals(arg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executa o backfill e aguarda o desfecho de todos os arquivos enfileirados.
+     *
+     * @return código de saída do processo
+     */
+    public int executar(String... args) throws InterruptedException {
+        List<Path> origens = new ArrayList<>();
+        String usuario = System.getenv("CAGEPA_USUARIO");
+        String senha = System.getenv("CAGEPA_SENHA");
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith(OPCAO_LISTA)) {
+                    lerLista(Paths.get(arg.substring(OPCAO_LISTA.length())), origens);
+                } else if (arg.startsWith(OPCAO_USUARIO)) {
+                    usuario = arg.substring(OPCAO_USUARIO.length());
+                } else if (arg.startsWith(OPCAO_SENHA)) {
+                    senha = arg.substring(OPCAO_SENHA.length());
+                } else if (!arg.startsWith("--")) {
+                    origens.add(Paths.get(arg));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao ler lista de arquivos: " + e.getMessage());
+            return 2;
+        }
+
+        if (origens.isEmpty()) {
+            System.err.println("Uso: " + OPCAO + " [--lista=arquivos.txt] [--usuario=... --senha=...] <diretorio|arquivo>...");
+            return 2;
+        }
+
+        if (usuario == null || senha == null) {
+            System.err.println("Informe as credenciais com --usuario/--senha ou CAGEPA_USUARIO/CAGEPA_SENHA");
+            return 2;
+        }
+
+        try {
+            adminProxyFachada.loginSemMonitoramento(usuario, senha);
+        } catch (InvalidCredentialsException e) {
+            System.err.println("Erro na autenticacao do backfill: " + e.getMessage());
+            return 1;
+        }
+
+        System.out.println("[Backfill] Contando arquivos...");
+        long total = contar(origens);
+        System.out.println("[Backfill] " + total + " imagens encontradas");
+
+        Progresso progresso = new Progresso(total);
+        LedgerIngestao ledger = pipelineIngestao.getLedger();
+        ledger.adicionarObservador(progresso);
+        ScheduledExecutorService relatorio = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Backfill-Relatorio");
+            thread.setDaemon(true);
+            return thread;
+        });
+        relatorio.scheduleAtFixedRate(progresso::imprimir, intervaloRelatorioMs, intervaloRelatorioMs,
+                TimeUnit.MILLISECONDS);
+
+        try {
+            pipelineIngestao.iniciar(false);
+            for (Path origem : origens) {
+                enfileirar(origem, progresso);
+            }
+            progresso.descobertaConcluida();
+            progresso.aguardar();
+        } finally {
+            relatorio.shutdownNow();
+            ledger.removerObservador(progresso);
+        }
+
+        progresso.imprimir();
+        progresso.imprimirResumo();
+        return 0;
+    }
+
+    private void enfileirar(Path origem, Progresso progresso) throws InterruptedException {
+        try (Stream<Path> arquivos = imagens(origem)) {
+            for (Path arquivo : (Iterable<Path>) arquivos::iterator) {
+                // Arquivos com desfecho no ledger (execucao anterior) nao sao reprocessados
+                File imagem = arquivo.toFile();
+                progresso.enfileirado(imagem);
+                if (!pipelineIngestao.submeter(imagem, ENTRADA)) {
+                    progresso.ignorado(imagem);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("[Backfill] Erro ao percorrer " + origem + ": " + e.getMessage());
+        }
+    }
+
+    private long contar(List<Path> origens) {
+        long total = 0;
+        for (Path origem : origens) {
+            try (Stream<Path> arquivos = imagens(origem)) {
+                total += arquivos.count();
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("[Backfill] Erro ao percorrer " + origem + ": " + e.getMessage());
+            }
+        }
+        return total;
+    }
+
+    private static Stream<Path> imagens(Path origem) throws IOException {
+        return Files.walk(origem)
+                .filter(Files::isRegularFile)
+                .filter(p -> ehImagem(p.getFileName().toString().toLowerCase()));
+    }
+
+    private static void lerLista(Path lista, List<Path> origens) throws IOException {
+        try (Stream<String> linhas = Files.lines(lista)) {
+            linhas.map(String::trim)
+                    .filter(linha -> !linha.isEmpty() && !linha.startsWith("#"))
+                    .map(Paths::get)
+                    .forEach(origens::add);
+        }
+    }
+
+    private static boolean ehImagem(String nome) {
+        return nome.endsWith(".jpg") || nome.endsWith(".jpeg") ||
+               nome.endsWith(".png") || nome.endsWith(".bmp") ||
+               nome.endsWith(".gif") || nome.endsWith(".tiff");
+    }
+
+    /**
+     * Contadores do backfill, alimentados pelos desfechos gravados no ledger para os arquivos
+     * enfileirados por ele.
+     */
+    private static final class Progresso implements LedgerIngestao.Observador {
+        private final long total;
+        private final long inicio = System.nanoTime();
+        // Caminhos enfileirados pelo backfill ainda sem desfecho; outros arquivos sao ignorados
+        private final Set<String> pendentes = ConcurrentHashMap.newKeySet();
+        private final LongAdder ignorados = new LongAdder();
+        private final LongAdder descartados = new LongAdder();
+        private final Map<SituacaoIngestao, LongAdder> porSituacao = new EnumMap<>(SituacaoIngestao.class);
+        private volatile boolean descobertaConcluida = false;
+
+        private Progresso(long total) {
+            this.total = total;
+            for (SituacaoIngestao situacao : SituacaoIngestao.values()) {
+                porSituacao.put(situacao, new LongAdder());
+            }
+        }
+
+        @Override
+        public void concluido(File arquivo, SituacaoIngestao situacao, long nanosDesdeReserva) {
+            if (pendentes.remove(arquivo.getAbsolutePath())) {
+                porSituacao.get(situacao).increment();
+                notificarSeTerminou();
+            }
+        }
+
+        @Override
+        public void liberado(File arquivo) {
+            if (pendentes.remove(arquivo.getAbsolutePath())) {
+                descartados.increment();
+                notificarSeTerminou();
+            }
+        }
+
+        /**
+         * Marca o arquivo antes de submetê-lo, para que um desfecho rápido não passe despercebido.
+         */
+        void enfileirado(File arquivo) {
+            pendentes.add(arquivo.getAbsolutePath());
+        }
+
+        void ignorado(File arquivo) {
+            pendentes.remove(arquivo.getAbsolutePath());
+            ignorados.increment();
+        }
+
+        synchronized void descobertaConcluida() {
+            descobertaConcluida = true;
+            notifyAll();
+        }
+
+        synchronized void aguardar() throws InterruptedException {
+            while (!descobertaConcluida || !pendentes.isEmpty()) {
+                wait(1000);
+            }
+        }
+
+        private synchronized void notificarSeTerminou() {
+            if (descobertaConcluida && pendentes.isEmpty()) {
+                notifyAll();
+            }
+        }
+
+        private long finalizados() {
+            long soma = descartados.sum();
+            for (LongAdder contador : porSituacao.values()) {
+                soma += contador.sum();
+            }
+            return soma;
+        }
+
+        void imprimir() {
+            long finalizados = finalizados();
+            long feitos = finalizados + ignorados.sum();
+            double segundos = Math.max(1e-3, (System.nanoTime() - inicio) / 1e9);
+            double taxa = finalizados / segundos;
+            long restantes = Math.max(0, total - feitos);
+            String eta = taxa > 0 ? formatarDuracao((long) (restantes / taxa)) : "--";
+
+            System.out.printf("[Backfill] %d/%d (%.1f%%) | %.1f imagens/s | ETA %s | ja processadas=%d%n",
+                    feitos, total, total > 0 ? feitos * 100.0 / total : 100.0, taxa, eta, ignorados.sum());
+        }
+
+        void imprimirResumo() {
+            System.out.println("[Backfill] Concluido em " + formatarDuracao((long) ((System.nanoTime() - inicio) / 1e9)));
+            porSituacao.forEach((situacao, contador) ->
+                    System.out.println("  " + situacao + ": " + contador.sum()));
+            System.out.println("  DESCARTADA_OU_ERRO: " + descartados.sum());
+            System.out.println("  JA_PROCESSADA: " + ignorados.sum());
+        }
+
+        private static String formatarDuracao(long segundos) {
+            return String.format("%02d:%02d:%02d", segundos / 3600, (segundos / 60) % 60, segundos % 60);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Estágio do pipeline de ingestão: fila limitada de entrada e um número fixo de workers.
+ * O resultado de cada item é entregue ao próximo estágio; como a entrega bloqueia quando a
+ * fila seguinte está cheia, a pressão se propaga de volta até a descoberta de arquivos.
+ * Um estágio em lote acumula até N itens, ou o que chegar dentro de uma janela curta,
+ * e os processa de uma vez; cada item ainda tem seu próprio desfecho.
+ *
+ * Nenhum item some sem desfecho: erros (inclusive Error) no processamento ou na entrega de
+ * um item levam esse item ao destino de falha, e o worker continua. Um item cuja entrega ao
+ * estágio seguinte é interrompida vai para o destino de falha daquele estágio.
+ *
+ * @param <E> tipo dos itens de entrada
+ * @param <S> tipo dos itens de saída (null descarta o item)
+ */
+public class EstagioPipeline<E, S> {
+
+    private final String nome;
+    private final int workers;
+    private final BlockingQueue<E> fila;
+    private final Function<List<E>, List<S>> processador;
+    private final int tamanhoLote;
+    private final long janelaLoteNanos;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile Consumer<S> proximo = item -> { };
+    private volatile Consumer<E> descarte = item -> { };
+    private volatile Consumer<E> falha = item -> { };
+    private volatile boolean executando = false;
+
+    public EstagioPipeline(String nome, int workers, int capacidade, Function<E, S> processador) {
+        this(nome, workers, filaLimitada(nome, capacidade), processador);
+    }
+
+    /**
+     * Cria um estágio que consome a fila informada, por exemplo uma fila com ordem de
+     * atendimento própria; a fila deve ser limitada para que a pressão se propague.
+     */
+    public EstagioPipeline(String nome, int workers, BlockingQueue<E> fila, Function<E, S> processador) {
+        this(nome, workers, fila, 1, 0,
+                lote -> Collections.singletonList(processador.apply(lote.get(0))));
+    }
+
+    private EstagioPipeline(String nome, int workers, BlockingQueue<E> fila, int tamanhoLote, long janelaLoteMs,
+                            Function<List<E>, List<S>> processador) {
+        if (workers <= 0 || tamanhoLote <= 0) {
+            throw new IllegalArgumentException("Estagio " + nome + " precisa de workers e lote positivos");
+        }
+        this.nome = nome;
+        this.workers = workers;
+        this.fila = fila;
+        this.processador = processador;
+        this.tamanhoLote = tamanhoLote;
+        this.janelaLoteNanos = TimeUnit.MILLISECONDS.toNanos(janelaLoteMs);
+    }
+
+    /**
+     * Cria um estágio que processa os itens em lotes de até tamanhoLote, esperando no máximo
+     * janelaLoteMs após o primeiro item. O processador devolve uma saída por item, na mesma ordem.
+     */
+    public static <E, S> EstagioPipeline<E, S> emLote(String nome, int workers, int capacidade, int tamanhoLote,
+                                                      long janelaLoteMs, Function<List<E>, List<S>> processador) {
+        return new EstagioPipeline<>(nome, workers, filaLimitada(nome, capacidade), tamanhoLote, janelaLoteMs,
+                processador);
+    }
+
+    private static <E> BlockingQueue<E> filaLimitada(String nome, int capacidade) {
+        if (capacidade <= 0) {
+            throw new IllegalArgumentException("Estagio " + nome + " precisa de capacidade positiva");
+        }
+        return new ArrayBlockingQueue<>(capacidade);
+    }
+
+    /**
+     * Encadeia este estágio ao seguinte.
+     */
+    public <T> EstagioPipeline<S, T> conectar(EstagioPipeline<S, T> seguinte) {
+        this.proximo = item -> {
+            try {
+                seguinte.submeter(item);
+            } catch (InterruptedException e) {
+                // Parada durante a espera por espaco: o item nao entrou na fila seguinte
+                Thread.currentThread().interrupt();
+                seguinte.falhar(item);
+            }
+        };
+        return seguinte;
+    }
+
+    /**
+     * Define o destino final dos itens produzidos por este estágio.
+     */
+    public void finalizarEm(Consumer<S> destino) {
+        this.proximo = destino;
+    }
+
+    /**
+     * Define o que fazer com itens que o processador descartou (retornou null).
+     */
+    public EstagioPipeline<E, S> aoDescartar(Consumer<E> destino) {
+        this.descarte = destino;
+        return this;
+    }
+
+    /**
+     * Define o que fazer com itens cujo processamento lançou exceção.
+     */
+    public EstagioPipeline<E, S> aoFalhar(Consumer<E> destino) {
+        this.falha = destino;
+        return this;
+    }
+
+    /**
+     * Enfileira um item, bloqueando enquanto a fila estiver cheia.
+     */
+    public void submeter(E item) throws InterruptedException {
+        fila.put(item);
+    }
+
+    public synchronized void iniciar() {
+        if (executando) {
+            return;
+        }
+        executando = true;
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::executar, "Pipeline-" + nome + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    public synchronized void parar() {
+        executando = false;
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    private void executar() {
+        List<E> lote = new ArrayList<>(tamanhoLote);
+        while (executando) {
+            try {
+                coletarLote(lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lote.forEach(this::falhar);
+                return;
+            }
+
+            List<S> saidas;
+            try {
+                saidas = processador.apply(lote);
+            } catch (Throwable e) {
+                System.err.println("[Pipeline-" + nome + "] Erro ao processar " + lote.size() + " item(ns): " + e);
+                lote.forEach(this::falhar);
+                lote.clear();
+                continue;
+            }
+
+            // Cada item e entregue isoladamente: um erro na entrega nao afeta os ja entregues
+            for (int i = 0; i < lote.size(); i++) {
+                E item = lote.get(i);
+                try {
+                    S saida = saidas.get(i);
+                    if (saida != null) {
+                        proximo.accept(saida);
+                    } else {
+                        descarte.accept(item);
+                    }
+                } catch (Throwable e) {
+                    System.err.println("[Pipeline-" + nome + "] Erro ao entregar item: " + e);
+                    falhar(item);
+                }
+            }
+            lote.clear();
+        }
+    }
+
+    private void falhar(E item) {
+        try {
+            falha.accept(item);
+        } catch (Throwable e) {
+            System.err.println("[Pipeline-" + nome + "] Erro ao tratar falha de item: " + e);
+        }
+    }
+
+    /**
+     * Aguarda o primeiro item e junta os que chegarem até encher o lote ou vencer a janela.
+     */
+    private void coletarLote(List<E> lote) throws InterruptedException {
+        lote.add(fila.take());
+        if (tamanhoLote == 1) {
+            return;
+        }
+
+        fila.drainTo(lote, tamanhoLote - lote.size());
+        long prazo = System.nanoTime() + janelaLoteNanos;
+        while (lote.size() < tamanhoLote) {
+            long restante = prazo - System.nanoTime();
+            if (restante <= 0) {
+                break;
+            }
+            E item = fila.poll(restante, TimeUnit.NANOSECONDS);
+            if (item == null) {
+                break;
+            }
+            lote.add(item);
+            fila.drainTo(lote, tamanhoLote - lote.size());
+        }
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getTamanhoLote() {
+        return tamanhoLote;
+    }
+
+    public int getProfundidadeFila() {
+        return fila.size();
+    }
+
+    public int getCapacidadeRestante() {
+        return fila.remainingCapacity();
+    }
+}
@@ -0,0 +1,333 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fila limitada com uma subfila por chave (o SHA do hidrômetro) e retirada em rodízio:
+ * cada chave com itens pendentes entrega um item por volta. Um hidrômetro que envia
+ * centenas de imagens não atrasa os demais, que continuam sendo atendidos a cada volta.
+ *
+ * Opcionalmente, cada chave mantém só as N imagens mais novas enfileiradas dentro de uma
+ * janela; as mais antigas são coalescidas (entregues ao callback, fora da fila) e contadas.
+ * Itens enfileirados há mais tempo que a janela não são coalescidos.
+ *
+ * O iterador percorre uma cópia do conteúdo no momento da chamada.
+ *
+ * @param <E> tipo dos itens
+ */
+public class FilaJustaPorChave<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private final Function<E, String> chave;
+    private final int capacidade;
+    private final int maxPorChave;
+    private final long janelaNanos;
+    private final Consumer<E> aoCoalescer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition naoVazia = lock.newCondition();
+    private final Condition naoCheia = lock.newCondition();
+    private final Map<String, ArrayDeque<Pendente<E>>> subfilas = new HashMap<>();
+    // Chaves com itens pendentes, na ordem de atendimento
+    private final ArrayDeque<String> rodizio = new ArrayDeque<>();
+    private final Map<String, LongAdder> coalescidasPorChave = new ConcurrentHashMap<>();
+    private int tamanho = 0;
+
+    /**
+     * Fila justa sem coalescência.
+     */
+    public FilaJustaPorChave(int capacidade, Function<E, String> chave) {
+        this(capacidade, chave, 0, 0, item -> { });
+    }
+
+    /**
+     * @param maxPorChave máximo de itens por chave enfileirados dentro da janela (0 desativa a coalescência)
+     * @param janelaMs    janela em que itens da mesma chave são considerados uma rajada
+     * @param aoCoalescer recebe cada item removido pela coalescência, fora do lock da fila
+     */
+    public FilaJustaPorChave(int capacidade, Function<E, String> chave, int maxPorChave, long janelaMs,
+                             Consumer<E> aoCoalescer) {
+        if (capacidade <= 0 || maxPorChave < 0) {
+            throw new IllegalArgumentException("Capacidade deve ser positiva e maximo por chave nao negativo");
+        }
+        this.chave = chave;
+        this.capacidade = capacidade;
+        this.maxPorChave = maxPorChave;
+        this.janelaNanos = TimeUnit.MILLISECONDS.toNanos(janelaMs);
+        this.aoCoalescer = aoCoalescer;
+    }
+
+    @Override
+    public void put(E item) throws InterruptedException {
+        Objects.requireNonNull(item);
+        E coalescido;
+        lock.lockInterruptibly();
+        try {
+            while (tamanho == capacidade && !substituiPorCoalescencia(item)) {
+                naoCheia.await();
+            }
+            coalescido = inserir(item);
+        } finally {
+            lock.unlock();
+        }
+        notificarCoalescido(coalescido);
+    }
+
+    @Override
+    public boolean offer(E item) {
+        Objects.requireNonNull(item);
+        E coalescido;
+        lock.lock();
+        try {
+            if (tamanho == capacidade && !substituiPorCoalescencia(item)) {
+                return false;
+            }
+            coalescido = inserir(item);
+        } finally {
+            lock.unlock();
+        }
+        notificarCoalescido(coalescido);
+        return true;
+    }
+
+    @Override
+    public boolean offer(E item, long timeout, TimeUnit unidade) throws InterruptedException {
+        Objects.requireNonNull(item);
+        long restante = unidade.toNanos(timeout);
+        E coalescido;
+        lock.lockInterruptibly();
+        try {
+            while (tamanho == capacidade && !substituiPorCoalescencia(item)) {
+                if (restante <= 0) {
+                    return false;
+                }
+                restante = naoCheia.awaitNanos(restante);
+            }
+            coalescido = inserir(item);
+        } finally {
+            lock.unlock();
+        }
+        notificarCoalescido(coalescido);
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (tamanho == 0) {
+                naoVazia.await();
+            }
+            return retirar();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unidade) throws InterruptedException {
+        long restante = unidade.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (tamanho == 0) {
+                if (restante <= 0) {
+                    return null;
+                }
+                restante = naoVazia.awaitNanos(restante);
+            }
+            return retirar();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll() {
+        lock.lock();
+        try {
+            return tamanho == 0 ? null : retirar();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        lock.lock();
+        try {
+            return tamanho == 0 ? null : subfilas.get(rodizio.peekFirst()).peekFirst().item;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> destino) {
+        return drainTo(destino, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> destino, int maximo) {
+        lock.lock();
+        try {
+            int retirados = 0;
+            while (tamanho > 0 && retirados < maximo) {
+                destino.add(retirar());
+                retirados++;
+            }
+            return retirados;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return tamanho;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacidade - tamanho;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        lock.lock();
+        try {
+            List<E> copia = new ArrayList<>(tamanho);
+            for (String chaveAtual : rodizio) {
+                subfilas.get(chaveAtual).forEach(pendente -> copia.add(pendente.item));
+            }
+            return copia.iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Número de chaves com itens pendentes.
+     */
+    public int getChavesPendentes() {
+        lock.lock();
+        try {
+            return rodizio.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Quantos itens de cada chave foram coalescidos desde o início.
+     */
+    public Map<String, Long> getCoalescidasPorChave() {
+        Map<String, Long> copia = new HashMap<>();
+        coalescidasPorChave.forEach((chaveAtual, contador) -> copia.put(chaveAtual, contador.sum()));
+        return copia;
+    }
+
+    /**
+     * Com a fila cheia, um item de uma chave em rajada ainda entra, pois toma o lugar do mais antigo dela.
+     */
+    private boolean substituiPorCoalescencia(E item) {
+        return itemCoalescivel(chave.apply(item), System.nanoTime()) != null;
+    }
+
+    private E inserir(E item) {
+        String chaveItem = chave.apply(item);
+        long agora = System.nanoTime();
+        E coalescido = null;
+
+        ArrayDeque<Pendente<E>> subfila = subfilas.get(chaveItem);
+        if (subfila == null) {
+            subfila = new ArrayDeque<>();
+            subfilas.put(chaveItem, subfila);
+            rodizio.addLast(chaveItem);
+        } else {
+            Pendente<E> maisAntigo = itemCoalescivel(chaveItem, agora);
+            if (maisAntigo != null) {
+                subfila.remove(maisAntigo);
+                tamanho--;
+                coalescido = maisAntigo.item;
+                coalescidasPorChave.computeIfAbsent(chaveItem, k -> new LongAdder()).increment();
+            }
+        }
+
+        subfila.addLast(new Pendente<>(item, agora));
+        tamanho++;
+        naoVazia.signal();
+        return coalescido;
+    }
+
+    /**
+     * O item mais antigo da chave dentro da janela, se ela já tem maxPorChave itens na janela.
+     */
+    private Pendente<E> itemCoalescivel(String chaveItem, long agora) {
+        ArrayDeque<Pendente<E>> subfila = subfilas.get(chaveItem);
+        if (maxPorChave == 0 || subfila == null || subfila.size() < maxPorChave) {
+            return null;
+        }
+
+        // Itens chegam em ordem: conta a partir do fim enquanto estiverem dentro da janela
+        int naJanela = 0;
+        Pendente<E> maisAntigoNaJanela = null;
+        for (Iterator<Pendente<E>> it = subfila.descendingIterator(); it.hasNext(); ) {
+            Pendente<E> pendente = it.next();
+            if (agora - pendente.enfileiradoEm > janelaNanos) {
+                break;
+            }
+            naJanela++;
+            maisAntigoNaJanela = pendente;
+        }
+        return naJanela >= maxPorChave ? maisAntigoNaJanela : null;
+    }
+
+    private E retirar() {
+        String chaveAtual = rodizio.pollFirst();
+        ArrayDeque<Pendente<E>> subfila = subfilas.get(chaveAtual);
+        Pendente<E> pendente = subfila.pollFirst();
+        if (subfila.isEmpty()) {
+            subfilas.remove(chaveAtual);
+        } else {
+            // Proxima vez desta chave so depois de todas as outras
+            rodizio.addLast(chaveAtual);
+        }
+        tamanho--;
+        naoCheia.signal();
+        return pendente.item;
+    }
+
+    private void notificarCoalescido(E coalescido) {
+        if (coalescido != null) {
+            aoCoalescer.accept(coalescido);
+        }
+    }
+
+    private record Pendente<E>(E item, long enfileiradoEm) {
+    }
+}
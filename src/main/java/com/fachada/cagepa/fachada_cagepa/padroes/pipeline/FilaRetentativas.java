@@ -0,0 +1,228 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import com.fachada.cagepa.fachada_cagepa.infra.indice.XxHash64;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Retentativas persistentes das imagens que falharam na decodificação (ILEGIVEL) ou no OCR
+ * (SEM_LEITURA), com intervalo exponencial entre tentativas.
+ *
+ * Enquanto um arquivo aguarda a próxima tentativa, novas submissões dele são recusadas: um
+ * gateway que reescreve o arquivo em laço não consome ciclos de OCR a cada MODIFY. Na tentativa
+ * o arquivo é reenviado com o conteúdo atual. Depois da última tentativa ele é movido para a
+ * quarentena, em uma subpasta por caminho de origem e com o nome original (o SHA vem do nome);
+ * corrigida a ROI, a quarentena pode ser reprocessada com --backfill.
+ *
+ * As pendências sobrevivem a reinícios em um arquivo texto no diretório dos índices.
+ */
+@Component
+public class FilaRetentativas implements LedgerIngestao.Observador {
+
+    private static final String NOME_ARQUIVO = "retentativas.txt";
+    private static final String NOME_ORIGEM = "origem.txt";
+
+    private final Path arquivoPendencias;
+    private final Path quarentena;
+    private final int maxTentativas;
+    private final long intervaloInicialMs;
+    private final long intervaloMaximoMs;
+    private final Map<String, Pendencia> pendencias = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private volatile Consumer<File> reenvio = arquivo -> { };
+    private volatile boolean alterada = false;
+
+    public FilaRetentativas(LedgerIngestao ledger,
+                            @Value("${cagepa.indice.diretorio:.cagepa}") String diretorio,
+                            @Value("${cagepa.retentativa.quarentena:.cagepa/quarentena}") String quarentena,
+                            @Value("${cagepa.retentativa.max-tentativas:5}") int maxTentativas,
+                            @Value("${cagepa.retentativa.intervalo-inicial-ms:60000}") long intervaloInicialMs,
+                            @Value("${cagepa.retentativa.intervalo-maximo-ms:3600000}") long intervaloMaximoMs) {
+        this.arquivoPendencias = Paths.get(diretorio, NOME_ARQUIVO);
+        this.quarentena = Paths.get(quarentena);
+        this.maxTentativas = maxTentativas;
+        this.intervaloInicialMs = intervaloInicialMs;
+        this.intervaloMaximoMs = intervaloMaximoMs;
+        carregar();
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Pipeline-retentativas");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::processar, 1, 1, TimeUnit.SECONDS);
+        ledger.adicionarObservador(this);
+    }
+
+    /**
+     * Define como reenviar um arquivo ao pipeline quando chega a hora da tentativa.
+     */
+    public void aoVencer(Consumer<File> reenvio) {
+        this.reenvio = reenvio;
+    }
+
+    /**
+     * Indica se o arquivo aguarda uma retentativa agendada (e não deve ser submetido de novo).
+     */
+    public boolean aguardando(File arquivo) {
+        return pendencias.containsKey(chave(arquivo));
+    }
+
+    public int getPendentes() {
+        return pendencias.size();
+    }
+
+    @Override
+    public void concluido(File arquivo, SituacaoIngestao situacao, long nanosDesdeReserva) {
+        if (situacao == SituacaoIngestao.ILEGIVEL || situacao == SituacaoIngestao.SEM_LEITURA) {
+            falhou(arquivo, situacao);
+        } else if (pendencias.remove(chave(arquivo)) != null) {
+            alterada = true;
+        }
+    }
+
+    @Override
+    public void liberado(File arquivo) {
+        // Retentativa sem desfecho (sessao expirada, interrupcao): reagenda sem contar tentativa
+        pendencias.computeIfPresent(chave(arquivo), (caminho, pendencia) -> pendencia.proximaEm == Long.MAX_VALUE
+                ? new Pendencia(pendencia.tentativas, System.currentTimeMillis() + intervaloInicialMs)
+                : pendencia);
+        alterada = true;
+    }
+
+    @PreDestroy
+    public void parar() {
+        executor.shutdownNow();
+        salvarSeAlterada();
+    }
+
+    private void falhou(File arquivo, SituacaoIngestao situacao) {
+        String caminho = chave(arquivo);
+        Pendencia anterior = pendencias.get(caminho);
+        int tentativas = anterior != null ? anterior.tentativas + 1 : 1;
+
+        if (tentativas >= maxTentativas) {
+            pendencias.remove(caminho);
+            alterada = true;
+            colocarEmQuarentena(arquivo, situacao, tentativas);
+            return;
+        }
+
+        long espera = Math.min(intervaloMaximoMs, intervaloInicialMs << Math.min(tentativas - 1, 30));
+        pendencias.put(caminho, new Pendencia(tentativas, System.currentTimeMillis() + espera));
+        alterada = true;
+        System.out.println("[Retentativas] " + arquivo.getName() + " (" + situacao + "), tentativa " + tentativas
+                + "/" + maxTentativas + ", proxima em " + espera / 1000 + " s");
+    }
+
+    private void processar() {
+        try {
+            long agora = System.currentTimeMillis();
+            List<String> vencidas = new ArrayList<>();
+            pendencias.forEach((caminho, pendencia) -> {
+                if (pendencia.proximaEm <= agora) {
+                    vencidas.add(caminho);
+                }
+            });
+
+            for (String caminho : vencidas) {
+                File arquivo = new File(caminho);
+                if (!arquivo.isFile()) {
+                    pendencias.remove(caminho);
+                    alterada = true;
+                    continue;
+                }
+                // Continua pendente ate o desfecho, para que submissoes concorrentes sigam recusadas
+                pendencias.computeIfPresent(caminho, (c, p) -> new Pendencia(p.tentativas, Long.MAX_VALUE));
+                reenvio.accept(arquivo);
+            }
+            salvarSeAlterada();
+        } catch (RuntimeException e) {
+            System.err.println("[Retentativas] Erro ao processar retentativas: " + e.getMessage());
+        }
+    }
+
+    private void colocarEmQuarentena(File arquivo, SituacaoIngestao situacao, int tentativas) {
+        // Subpasta por caminho de origem: arquivos de hidrometros diferentes podem ter o mesmo nome
+        Path destino = quarentena.resolve(Long.toHexString(XxHash64.hash(chave(arquivo))));
+        try {
+            Files.createDirectories(destino);
+            Files.move(arquivo.toPath(), destino.resolve(arquivo.getName()), StandardCopyOption.REPLACE_EXISTING);
+            Files.writeString(destino.resolve(NOME_ORIGEM), chave(arquivo) + System.lineSeparator());
+            System.err.println("[Retentativas] " + arquivo.getName() + " em quarentena apos " + tentativas
+                    + " tentativas (" + situacao + "): " + destino);
+        } catch (IOException e) {
+            System.err.println("[Retentativas] Erro ao mover " + arquivo.getName() + " para quarentena: " + e.getMessage());
+        }
+    }
+
+    private void carregar() {
+        if (!Files.exists(arquivoPendencias)) {
+            return;
+        }
+        try {
+            for (String linha : Files.readAllLines(arquivoPendencias, StandardCharsets.UTF_8)) {
+                String[] campos = linha.split("\t", 3);
+                if (campos.length == 3) {
+                    pendencias.put(campos[2], new Pendencia(Integer.parseInt(campos[0]), Long.parseLong(campos[1])));
+                }
+            }
+            System.out.println("[Retentativas] " + pendencias.size() + " imagens aguardando nova tentativa");
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Aviso: Erro ao carregar retentativas pendentes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Grava as pendências em um arquivo temporário e o move sobre o anterior.
+     */
+    private synchronized void salvarSeAlterada() {
+        if (!alterada) {
+            return;
+        }
+        alterada = false;
+        Path temporario = arquivoPendencias.resolveSibling(NOME_ARQUIVO + ".tmp");
+        try {
+            Files.createDirectories(arquivoPendencias.toAbsolutePath().getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(temporario, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Pendencia> entrada : pendencias.entrySet()) {
+                    Pendencia pendencia = entrada.getValue();
+                    // Tentativa em andamento: retoma de imediato se o processo parar antes do desfecho
+                    long proximaEm = pendencia.proximaEm == Long.MAX_VALUE ? 0 : pendencia.proximaEm;
+                    writer.write(pendencia.tentativas + "\t" + proximaEm + "\t" + entrada.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(temporario, arquivoPendencias, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            alterada = true;
+            System.err.println("Aviso: Erro ao gravar retentativas pendentes: " + e.getMessage());
+        }
+    }
+
+    private static String chave(File arquivo) {
+        return arquivo.getAbsolutePath();
+    }
+
+    private record Pendencia(int tentativas, long proximaEm) {
+    }
+}
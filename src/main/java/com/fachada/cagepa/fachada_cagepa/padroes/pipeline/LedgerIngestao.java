@@ -0,0 +1,459 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import com.fachada.cagepa.fachada_cagepa.infra.indice.TabelaHashMapeada;
+import com.fachada.cagepa.fachada_cagepa.infra.indice.XxHash64;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Ledger persistente das imagens ingeridas.
+ *
+ * Cada desfecho é anexado a um log (caminho, tamanho, mtime, instante e situação) e o
+ * índice mapeado em memória aponta, pelo hash do caminho, para o último registro do arquivo.
+ * Ao reiniciar, basta conferir tamanho e mtime para saber se um arquivo já foi processado,
+ * sem refazer o OCR do diretório inteiro. Os arquivos em andamento ficam só em memória e
+ * são limitados pela capacidade das filas do pipeline.
+ *
+ * O desfecho é gravado com o tamanho e o mtime lidos na reserva: se o arquivo for reescrito
+ * enquanto a versão anterior está em andamento, a nova versão não passa por processada e é
+ * reenviada quando a anterior termina.
+ *
+ * Cada novo desfecho de um arquivo já registrado deixa o registro anterior morto no log.
+ * Quando os mortos passam da fração configurada, o log é reescrito só com os registros vivos,
+ * de modo que ele fica proporcional ao número de arquivos e não ao de tentativas.
+ */
+@Component
+public class LedgerIngestao {
+
+    private static final String NOME_LOG = "ledger-ingestao.log";
+    private static final String NOME_INDICE = "ledger-ingestao.idx";
+    private static final String SUFIXO_COMPACTACAO = ".compactando";
+    // tamanho, mtime, instante (longs) + situacao (byte)
+    private static final int TAMANHO_FIXO = 8 + 8 + 8 + 1;
+    // Caminhos bem abaixo disso; um comprimento maior so vem de registro corrompido
+    private static final int TAMANHO_MAXIMO_CORPO = TAMANHO_FIXO + 64 * 1024;
+
+    private final Path arquivoLog;
+    private final Path arquivoIndice;
+    private final int capacidadeInicial;
+    private final double fracaoMortos;
+    private final long minimoMortos;
+    // Trocados pela compactacao; acessados sob o monitor do ledger
+    private FileChannel log;
+    private TabelaHashMapeada indice;
+    // Caminho -> versao (tamanho e mtime) reservada e instante da reserva
+    private final Map<String, Reserva> emAndamento = new ConcurrentHashMap<>();
+    private final List<Observador> observadores = new CopyOnWriteArrayList<>();
+    private volatile Consumer<File> reenvio = arquivo -> { };
+
+    public LedgerIngestao(@Value("${cagepa.indice.diretorio:.cagepa}") String diretorio,
+                          @Value("${cagepa.indice.ledger.capacidade-inicial:65536}") int capacidadeInicial,
+                          @Value("${cagepa.indice.ledger.compactacao.fracao-mortos:0.5}") double fracaoMortos,
+                          @Value("${cagepa.indice.ledger.compactacao.minimo-mortos:10000}") long minimoMortos) {
+        this.arquivoLog = Paths.get(diretorio, NOME_LOG);
+        this.arquivoIndice = Paths.get(diretorio, NOME_INDICE);
+        this.capacidadeInicial = capacidadeInicial;
+        this.fracaoMortos = fracaoMortos;
+        this.minimoMortos = minimoMortos;
+        try {
+            Files.createDirectories(arquivoLog.toAbsolutePath().getParent());
+            // Sobras de uma compactacao interrompida antes das trocas
+            Files.deleteIfExists(arquivoLog.resolveSibling(NOME_LOG + SUFIXO_COMPACTACAO));
+            Files.deleteIfExists(arquivoIndice.resolveSibling(NOME_INDICE + SUFIXO_COMPACTACAO));
+            abrirArquivos();
+            reindexar();
+            compactarSeNecessario();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao abrir ledger de ingestao em " + diretorio, e);
+        }
+        System.out.println("[LedgerIngestao] " + getQuantidade() + " arquivos ja processados");
+    }
+
+    /**
+     * Indica se o arquivo, com o tamanho e mtime atuais, já teve um desfecho registrado.
+     */
+    public boolean jaProcessado(File arquivo) {
+        return jaProcessado(arquivo, arquivo.length(), arquivo.lastModified());
+    }
+
+    /**
+     * Indica se o arquivo, com o tamanho e mtime informados, já teve um desfecho registrado.
+     */
+    public boolean jaProcessado(File arquivo, long tamanho, long mtime) {
+        String caminho = chave(arquivo);
+        try {
+            Registro registro = registroAtual(caminho);
+            return registro != null && registro.caminho.equals(caminho)
+                    && registro.tamanho == tamanho && registro.mtime == mtime;
+        } catch (IOException e) {
+            System.err.println("Aviso: Erro ao consultar ledger de ingestao: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reserva o arquivo para processamento, guardando o tamanho e o mtime desta versão.
+     *
+     * @return false se ele já está em andamento ou já foi processado sem alterações
+     */
+    public boolean reservar(File arquivo) {
+        long tamanho = arquivo.length();
+        long mtime = arquivo.lastModified();
+        if (jaProcessado(arquivo, tamanho, mtime)) {
+            return false;
+        }
+        return reservarSeLivre(arquivo, tamanho, mtime);
+    }
+
+    /**
+     * Reserva o arquivo para uma nova tentativa, mesmo que ele já tenha desfecho registrado.
+     *
+     * @return false se ele já está em andamento
+     */
+    public boolean reservarNovamente(File arquivo) {
+        return reservarSeLivre(arquivo, arquivo.length(), arquivo.lastModified());
+    }
+
+    /**
+     * Libera a reserva sem registrar desfecho; o arquivo poderá ser tentado de novo.
+     */
+    public void liberar(File arquivo) {
+        Reserva reserva = emAndamento.remove(chave(arquivo));
+        if (reserva != null) {
+            notificar(observador -> observador.liberado(arquivo));
+            reenviarSeAlterado(arquivo, reserva);
+        }
+    }
+
+    /**
+     * Registra o desfecho da versão reservada do arquivo e libera a reserva.
+     */
+    public void concluir(File arquivo, SituacaoIngestao situacao) {
+        String caminho = chave(arquivo);
+        Reserva reserva = emAndamento.get(caminho);
+        // Sem reserva (nao deveria ocorrer): registra a versao atual
+        long tamanho = reserva != null ? reserva.tamanho : arquivo.length();
+        long mtime = reserva != null ? reserva.mtime : arquivo.lastModified();
+        try {
+            anexar(caminho, tamanho, mtime, situacao);
+        } catch (IOException e) {
+            System.err.println("Aviso: Erro ao gravar ledger de ingestao: " + e.getMessage());
+        } finally {
+            // So depois de gravado, para que uma nova reserva ja veja o desfecho
+            emAndamento.remove(caminho);
+        }
+        long nanosDesdeReserva = reserva != null ? System.nanoTime() - reserva.reservadaEm : -1;
+        notificar(observador -> observador.concluido(arquivo, situacao, nanosDesdeReserva));
+        if (reserva != null) {
+            reenviarSeAlterado(arquivo, reserva);
+        }
+    }
+
+    /**
+     * Registra a versão atual do arquivo como concluída por outra instância do cluster, para
+     * que as varreduras locais deixem de oferecê-la. Não avisa os observadores, e não faz nada
+     * se o arquivo está reservado aqui: a reserva grava o próprio desfecho.
+     */
+    public void registrarRemota(File arquivo) {
+        String caminho = chave(arquivo);
+        if (emAndamento.containsKey(caminho)) {
+            return;
+        }
+        try {
+            anexar(caminho, arquivo.length(), arquivo.lastModified(), SituacaoIngestao.REMOTA);
+        } catch (IOException e) {
+            System.err.println("Aviso: Erro ao gravar ledger de ingestao: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Define o que fazer com um arquivo reescrito enquanto a versão anterior estava em
+     * andamento: o evento da nova versão foi recusado pela reserva e não se repete.
+     */
+    public void aoAlterarEmAndamento(Consumer<File> reenvio) {
+        this.reenvio = reenvio;
+    }
+
+    private boolean reservarSeLivre(File arquivo, long tamanho, long mtime) {
+        return emAndamento.putIfAbsent(chave(arquivo), new Reserva(tamanho, mtime, System.nanoTime())) == null;
+    }
+
+    /**
+     * Avisa cada observador isoladamente: um erro em um deles não impede os demais nem o reenvio.
+     */
+    private void notificar(Consumer<Observador> aviso) {
+        for (Observador observador : observadores) {
+            try {
+                aviso.accept(observador);
+            } catch (RuntimeException e) {
+                System.err.println("Aviso: Erro em observador do ledger de ingestao: " + e.getMessage());
+            }
+        }
+    }
+
+    private void reenviarSeAlterado(File arquivo, Reserva reserva) {
+        // Depois dos observadores: a quarentena pode ter movido o arquivo
+        if (arquivo.isFile() && (arquivo.length() != reserva.tamanho || arquivo.lastModified() != reserva.mtime)) {
+            System.out.println("[LedgerIngestao] Arquivo alterado durante o processamento, reenviando: "
+                    + arquivo.getName());
+            reenvio.accept(arquivo);
+        }
+    }
+
+    public void adicionarObservador(Observador observador) {
+        observadores.add(observador);
+    }
+
+    public void removerObservador(Observador observador) {
+        observadores.remove(observador);
+    }
+
+    public synchronized long getQuantidade() {
+        return indice.getQuantidade();
+    }
+
+    public int getEmAndamento() {
+        return emAndamento.size();
+    }
+
+    @PreDestroy
+    public synchronized void fechar() {
+        try {
+            log.force(false);
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Aviso: Erro ao fechar ledger de ingestao: " + e.getMessage());
+        }
+        indice.close();
+    }
+
+    private synchronized Registro registroAtual(String caminho) throws IOException {
+        long posicao = indice.obter(XxHash64.hash(caminho));
+        return posicao == TabelaHashMapeada.AUSENTE ? null : ler(posicao);
+    }
+
+    private synchronized void anexar(String caminho, long tamanho, long mtime, SituacaoIngestao situacao)
+            throws IOException {
+        byte[] bytesCaminho = caminho.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + TAMANHO_FIXO + bytesCaminho.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(TAMANHO_FIXO + bytesCaminho.length)
+                .putLong(tamanho)
+                .putLong(mtime)
+                .putLong(System.currentTimeMillis())
+                .put((byte) situacao.ordinal())
+                .put(bytesCaminho)
+                .flip();
+
+        long posicao = log.size();
+        while (buffer.hasRemaining()) {
+            log.write(buffer, posicao + buffer.position());
+        }
+        indexar(XxHash64.hash(caminho), posicao);
+        indice.setMetadado(posicao + buffer.limit());
+        compactarSeNecessario();
+    }
+
+    /**
+     * Aponta o índice para o registro; o registro que ele substitui passa a contar como morto.
+     */
+    private void indexar(long chave, long posicao) throws IOException {
+        if (indice.colocar(chave, posicao) != TabelaHashMapeada.AUSENTE) {
+            indice.setMetadadoAuxiliar(indice.getMetadadoAuxiliar() + 1);
+        }
+    }
+
+    private void abrirArquivos() throws IOException {
+        log = FileChannel.open(arquivoLog, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        TabelaHashMapeada tabela = TabelaHashMapeada.abrir(arquivoIndice, capacidadeInicial);
+        if (tabela.getMetadado() > log.size()) {
+            // Log menor que o indexado (restaurado, truncado ou trocado por uma compactacao
+            // interrompida antes do indice): reconstroi o indice
+            tabela.close();
+            Files.delete(arquivoIndice);
+            tabela = TabelaHashMapeada.abrir(arquivoIndice, capacidadeInicial);
+        }
+        indice = tabela;
+    }
+
+    /**
+     * Indexa os registros anexados depois da última execução e trunca o log no primeiro
+     * registro inválido (incompleto ou com comprimento impossível), deixado por uma queda
+     * no meio da escrita.
+     */
+    private void reindexar() throws IOException {
+        long posicao = indice.getMetadado();
+        long tamanhoLog = log.size();
+        while (posicao < tamanhoLog) {
+            Registro registro = ler(posicao);
+            if (registro == null) {
+                System.err.println("Aviso: Registro invalido no ledger de ingestao, truncando em " + posicao);
+                log.truncate(posicao);
+                break;
+            }
+            indexar(XxHash64.hash(registro.caminho), posicao);
+            posicao += registro.comprimento;
+        }
+        indice.setMetadado(posicao);
+    }
+
+    private void compactarSeNecessario() {
+        long mortos = indice.getMetadadoAuxiliar();
+        if (mortos < minimoMortos || mortos < fracaoMortos * (mortos + indice.getQuantidade())) {
+            return;
+        }
+        try {
+            compactar();
+        } catch (IOException e) {
+            System.err.println("Aviso: Erro ao compactar ledger de ingestao: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reescreve o log só com os registros apontados pelo índice, montando um índice novo ao lado.
+     * As trocas são por move atômico, o log primeiro: uma queda entre as duas deixa o índice
+     * antigo apontando além do fim do log novo, e ele é reconstruído na partida.
+     */
+    private void compactar() throws IOException {
+        Path logNovo = arquivoLog.resolveSibling(NOME_LOG + SUFIXO_COMPACTACAO);
+        Path indiceNovo = arquivoIndice.resolveSibling(NOME_INDICE + SUFIXO_COMPACTACAO);
+        long tamanhoAnterior = log.size();
+        long vivos = indice.getQuantidade();
+
+        try (FileChannel destino = FileChannel.open(logNovo, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            TabelaHashMapeada tabela = TabelaHashMapeada.abrir(indiceNovo,
+                    (int) Math.min(Integer.MAX_VALUE, Math.max(capacidadeInicial, vivos * 2)));
+            long posicao = 0;
+            long posicaoNova = 0;
+            long fim = indice.getMetadado();
+            try {
+                while (posicao < fim) {
+                    ByteBuffer bruto = lerBruto(posicao);
+                    if (bruto == null) {
+                        throw new IOException("Registro invalido na posicao " + posicao);
+                    }
+                    Registro registro = decodificar(bruto.duplicate());
+                    long chave = XxHash64.hash(registro.caminho);
+                    if (indice.obter(chave) == posicao) {
+                        while (bruto.hasRemaining()) {
+                            destino.write(bruto, posicaoNova + bruto.position());
+                        }
+                        tabela.colocar(chave, posicaoNova);
+                        posicaoNova += registro.comprimento;
+                    }
+                    posicao += registro.comprimento;
+                }
+                destino.force(true);
+                tabela.setMetadado(posicaoNova);
+                tabela.setMetadadoAuxiliar(0);
+            } finally {
+                tabela.close();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(logNovo);
+            Files.deleteIfExists(indiceNovo);
+            throw e;
+        }
+
+        log.close();
+        indice.close();
+        Files.move(logNovo, arquivoLog, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indiceNovo, arquivoIndice, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        abrirArquivos();
+        System.out.println("[LedgerIngestao] Log compactado: " + tamanhoAnterior + " -> " + log.size()
+                + " bytes, " + vivos + " registros vivos");
+    }
+
+    private Registro ler(long posicao) throws IOException {
+        ByteBuffer bruto = lerBruto(posicao);
+        return bruto == null ? null : decodificar(bruto);
+    }
+
+    /**
+     * Lê o registro inteiro (cabeçalho e corpo), ou null se ele está incompleto ou tem um
+     * comprimento que não cabe no log.
+     */
+    private ByteBuffer lerBruto(long posicao) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        if (!lerCompleto(cabecalho, posicao)) {
+            return null;
+        }
+        int tamanhoCorpo = cabecalho.getInt(0);
+        // Valida antes de alocar: um cabecalho corrompido pediria gigabytes
+        if (tamanhoCorpo < TAMANHO_FIXO || tamanhoCorpo > TAMANHO_MAXIMO_CORPO
+                || tamanhoCorpo > log.size() - posicao - 4) {
+            return null;
+        }
+
+        ByteBuffer bruto = ByteBuffer.allocate(4 + tamanhoCorpo).order(ByteOrder.LITTLE_ENDIAN);
+        if (!lerCompleto(bruto, posicao)) {
+            return null;
+        }
+        return bruto.flip();
+    }
+
+    private static Registro decodificar(ByteBuffer bruto) {
+        bruto.order(ByteOrder.LITTLE_ENDIAN);
+        int comprimento = bruto.remaining();
+        bruto.getInt();
+        long tamanho = bruto.getLong();
+        long mtime = bruto.getLong();
+        bruto.getLong();
+        bruto.get();
+        String caminho = StandardCharsets.UTF_8.decode(bruto).toString();
+        return new Registro(caminho, tamanho, mtime, comprimento);
+    }
+
+    private boolean lerCompleto(ByteBuffer buffer, long posicao) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, posicao + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String chave(File arquivo) {
+        return arquivo.getAbsolutePath();
+    }
+
+    /**
+     * Acompanha os desfechos gravados no ledger (por exemplo, para relatar o progresso de um backfill).
+     */
+    public interface Observador {
+        /**
+         * Desfecho gravado; nanosDesdeReserva é o tempo desde a reserva do arquivo, ou negativo
+         * se ele foi concluído sem reserva.
+         */
+        void concluido(File arquivo, SituacaoIngestao situacao, long nanosDesdeReserva);
+
+        /** Reserva liberada sem desfecho: descarte na descoberta ou erro inesperado. */
+        default void liberado(File arquivo) {
+        }
+    }
+
+    private record Registro(String caminho, long tamanho, long mtime, int comprimento) {
+    }
+
+    private record Reserva(long tamanho, long mtime, long reservadaEm) {
+    }
+}
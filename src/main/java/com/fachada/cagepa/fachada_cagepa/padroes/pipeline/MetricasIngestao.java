@@ -0,0 +1,139 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Métricas da ingestão de imagens, publicadas no registro Micrometer.
+ *
+ * Como observador do ledger, conta cada desfecho (registrada, rejeitada por valor não
+ * monotônico, ilegível, sem leitura no OCR, coalescida, duplicada, sem alteração) e mede a latência da reserva do
+ * arquivo até o desfecho. A reserva acontece quando o watcher entrega o arquivo concluído, ou,
+ * em cluster, quando a instância o arrenda: a janela de conclusão da escrita e a espera na
+ * tabela de reivindicações ficam de fora. Os descartes na descoberta
+ * (SHA desconhecido, sem autorização, arquivo ausente) são contados
+ * pela própria descoberta, sob o mesmo nome de métrica.
+ */
+@Component
+public class MetricasIngestao implements LedgerIngestao.Observador {
+
+    public static final String DESCARTE_NAO_AUTORIZADA = "nao_autorizada";
+    public static final String DESCARTE_ARQUIVO_AUSENTE = "arquivo_ausente";
+    public static final String DESCARTE_SHA_DESCONHECIDO = "sha_desconhecido";
+
+    private static final String DESFECHOS = "cagepa.ingestao.desfechos";
+
+    private final MeterRegistry registry;
+    private final Timer decodificacao;
+    private final Timer ocr;
+    private final Map<SituacaoIngestao, Counter> desfechos = new EnumMap<>(SituacaoIngestao.class);
+    private final Map<SituacaoIngestao, Timer> latencias = new EnumMap<>(SituacaoIngestao.class);
+    private final Map<String, Counter> descartes = new ConcurrentHashMap<>();
+
+    public MetricasIngestao(MeterRegistry registry, LedgerIngestao ledger) {
+        this.registry = registry;
+        this.decodificacao = Timer.builder("cagepa.ingestao.decodificacao")
+                .description("Tempo de decodificacao da regiao usada pelo OCR")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.ocr = Timer.builder("cagepa.ingestao.ocr")
+                .description("Tempo do OCR por imagem, somando as estrategias tentadas")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        for (SituacaoIngestao situacao : SituacaoIngestao.values()) {
+            String desfecho = situacao.name().toLowerCase(Locale.ROOT);
+            desfechos.put(situacao, Counter.builder(DESFECHOS)
+                    .description("Imagens por desfecho da ingestao")
+                    .tag("desfecho", desfecho)
+                    .register(registry));
+            latencias.put(situacao, Timer.builder("cagepa.ingestao.latencia_reserva")
+                    .description("Latencia da reserva do arquivo ate o desfecho (persistencia, para as registradas)")
+                    .tag("desfecho", desfecho)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(10))
+                    .maximumExpectedValue(Duration.ofHours(1))
+                    .register(registry));
+        }
+
+        Gauge.builder("cagepa.ingestao.em_andamento", ledger, LedgerIngestao::getEmAndamento)
+                .description("Arquivos reservados ainda sem desfecho")
+                .register(registry);
+        ledger.adicionarObservador(this);
+    }
+
+    @Override
+    public void concluido(File arquivo, SituacaoIngestao situacao, long nanosDesdeReserva) {
+        desfechos.get(situacao).increment();
+        if (nanosDesdeReserva >= 0) {
+            latencias.get(situacao).record(nanosDesdeReserva, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Conta uma imagem descartada na descoberta, sem desfecho no ledger.
+     */
+    public void descartada(String motivo) {
+        descartes.computeIfAbsent(motivo, m -> Counter.builder(DESFECHOS)
+                .description("Imagens por desfecho da ingestao")
+                .tag("desfecho", m)
+                .register(registry)).increment();
+    }
+
+    public void registrarDecodificacao(long nanos) {
+        decodificacao.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void registrarOcr(long nanos) {
+        ocr.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Publica a profundidade da fila do estágio, com o nome do estágio como tag.
+     */
+    public void monitorarFila(EstagioPipeline<?, ?> estagio) {
+        Gauge.builder("cagepa.pipeline.fila", estagio, EstagioPipeline::getProfundidadeFila)
+                .description("Itens aguardando na fila do estagio")
+                .tag("estagio", estagio.getNome())
+                .register(registry);
+    }
+
+    /**
+     * Publica um valor lido sob demanda do objeto informado.
+     */
+    public <T> void monitorar(String nome, String descricao, T objeto, ToDoubleFunction<T> valor) {
+        Gauge.builder(nome, objeto, valor).description(descricao).register(registry);
+    }
+
+    /**
+     * Contador de arquivos entregues ao pipeline pelo watcher da raiz.
+     */
+    public Counter arquivosDetectados(String raiz) {
+        return Counter.builder("cagepa.watcher.arquivos")
+                .description("Arquivos concluidos entregues ao pipeline pelo watcher")
+                .tag("raiz", raiz)
+                .register(registry);
+    }
+
+    /**
+     * Contador de estouros da fila de eventos do watcher da raiz (cada um dispara uma reconciliação).
+     */
+    public Counter estourosWatcher(String raiz) {
+        return Counter.builder("cagepa.watcher.estouros")
+                .description("Eventos perdidos pelo sistema de arquivos, seguidos de reconciliacao")
+                .tag("raiz", raiz)
+                .register(registry);
+    }
+}
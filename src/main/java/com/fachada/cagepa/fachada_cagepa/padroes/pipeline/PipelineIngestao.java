@@ -0,0 +1,442 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.fachada.proxy.AdminProxyFachada;
+import com.fachada.cagepa.fachada_cagepa.padroes.ocr.ImagemHidrometro;
+import com.fachada.cagepa.fachada_cagepa.padroes.ocr.LeituraHidrometroService;
+import com.fachada.cagepa.fachada_cagepa.padroes.ocr.ResultadoOCR;
+import com.fachada.cagepa.fachada_cagepa.padroes.ocr.TesseractPool;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pipeline de ingestão de imagens de hidrômetros em estágios:
+ * descoberta -> decodificação -> OCR -> validação -> persistência.
+ *
+ * Cada estágio tem fila limitada e workers próprios. A fila do OCR é pequena,
+ * de modo que o número de imagens decodificadas em memória fica limitado
+ * independentemente de quantos arquivos cheguem de uma só vez.
+ *
+ * Os desfechos finais são gravados no ledger de ingestão. Descartes na descoberta
+ * (SHA não cadastrado) e falhas inesperadas apenas liberam a reserva do arquivo,
+ * para que ele possa ser tentado de novo; conteúdo repetido é concluído como duplicado.
+ *
+ * Sem um administrador logado nem a identidade de serviço ativa (por exemplo, quando a
+ * renovação do token dela é recusada), a descoberta fica pausada: as imagens esperam na fila,
+ * a fila cheia segura as entregas dos watchers e, em cluster, a instância para de arrendar.
+ * Nenhuma delas recebe desfecho nem é liberada enquanto a ingestão não volta a ser autorizada.
+ *
+ * Cada entrada (por exemplo, uma raiz monitorada) pode ter sua própria descoberta, com fila
+ * e worker próprios, alimentando os mesmos estágios de decodificação e OCR. Assim uma pasta
+ * com muitos arquivos não impede as demais de avançar.
+ *
+ * A fila da decodificação tem uma subfila por hidrômetro, atendidas em rodízio, e define
+ * a ordem em que as imagens chegam ao OCR: uma câmera desregulada enviando centenas de
+ * fotos não atrasa os outros hidrômetros. Opcionalmente, as rajadas de um hidrômetro são
+ * coalescidas nas imagens mais novas.
+ *
+ * Com o cluster habilitado, os arquivos encontrados pelos watchers são publicados na tabela
+ * de reivindicações e cada instância arrenda lotes dela conforme a descoberta tem espaço;
+ * os desfechos gravados no ledger concluem ou liberam a reivindicação.
+ *
+ * Imagens ilegíveis ou sem leitura voltam ao pipeline pela fila de retentativas, com intervalo
+ * crescente; enquanto aguardam, novas submissões do mesmo arquivo são recusadas.
+ *
+ * A profundidade da fila de cada estágio é publicada como métrica.
+ */
+@Component
+public class PipelineIngestao {
+
+    // Intervalo entre as verificacoes de autorizacao com a descoberta pausada
+    private static final long PAUSA_AUTORIZACAO_MS = 5000;
+
+    private final EstagioPipeline<File, ImagemHidrometro> descoberta;
+    private final EstagioPipeline<ImagemHidrometro, ImagemHidrometro> decodificacao;
+    private final EstagioPipeline<ImagemHidrometro, ResultadoOCR> ocr;
+    private final EstagioPipeline<ResultadoOCR, ResultadoOCR> validacao;
+    private final EstagioPipeline<ResultadoOCR, ResultadoOCR> persistencia;
+
+    private final LeituraHidrometroService leituraHidrometroService;
+    private final AdminProxyFachada adminProxyFachada;
+    private final LedgerIngestao ledger;
+    private final ReivindicacaoImagens reivindicacoes;
+    private final FilaRetentativas retentativas;
+    private final MetricasIngestao metricas;
+    private final int clusterLote;
+    private final long clusterIntervaloMs;
+    private final FilaJustaPorChave<ImagemHidrometro> filaDecodificacao;
+    private final Map<String, EstagioPipeline<File, ImagemHidrometro>> descobertaPorEntrada = new ConcurrentHashMap<>();
+    private final int descobertaWorkers;
+    private final int descobertaCapacidade;
+    private final ExecutorService reenvios;
+    private final AtomicBoolean pausada = new AtomicBoolean(false);
+    private boolean iniciado = false;
+    private Thread arrendamento;
+
+    public PipelineIngestao(LeituraHidrometroService leituraHidrometroService,
+                            AdminProxyFachada adminProxyFachada,
+                            TesseractPool tesseractPool,
+                            LedgerIngestao ledger,
+                            ReivindicacaoImagens reivindicacoes,
+                            FilaRetentativas retentativas,
+                            MetricasIngestao metricas,
+                            @Value("${cagepa.pipeline.descoberta.workers:1}") int descobertaWorkers,
+                            @Value("${cagepa.pipeline.descoberta.capacidade:10000}") int descobertaCapacidade,
+                            @Value("${cagepa.pipeline.decodificacao.workers:2}") int decodificacaoWorkers,
+                            @Value("${cagepa.pipeline.decodificacao.capacidade:256}") int decodificacaoCapacidade,
+                            @Value("${cagepa.pipeline.coalescencia.max-por-hidrometro:0}") int coalescenciaMaxPorHidrometro,
+                            @Value("${cagepa.pipeline.coalescencia.janela-ms:60000}") long coalescenciaJanelaMs,
+                            @Value("${cagepa.pipeline.ocr.workers:0}") int ocrWorkers,
+                            @Value("${cagepa.pipeline.ocr.capacidade:0}") int ocrCapacidade,
+                            @Value("${cagepa.pipeline.validacao.workers:1}") int validacaoWorkers,
+                            @Value("${cagepa.pipeline.validacao.capacidade:256}") int validacaoCapacidade,
+                            @Value("${cagepa.pipeline.persistencia.workers:1}") int persistenciaWorkers,
+                            @Value("${cagepa.pipeline.persistencia.capacidade:256}") int persistenciaCapacidade,
+                            @Value("${cagepa.pipeline.persistencia.lote:50}") int persistenciaLote,
+                            @Value("${cagepa.pipeline.persistencia.janela-ms:200}") long persistenciaJanelaMs,
+                            @Value("${cagepa.cluster.lote:16}") int clusterLote,
+                            @Value("${cagepa.cluster.intervalo-ms:1000}") long clusterIntervaloMs) {
+        this.leituraHidrometroService = leituraHidrometroService;
+        this.adminProxyFachada = adminProxyFachada;
+        this.ledger = ledger;
+        this.reivindicacoes = reivindicacoes;
+        this.retentativas = retentativas;
+        this.metricas = metricas;
+        this.clusterLote = clusterLote;
+        this.clusterIntervaloMs = clusterIntervaloMs;
+        this.descobertaWorkers = descobertaWorkers;
+        this.descobertaCapacidade = descobertaCapacidade;
+
+        // Por padrao, um worker de OCR por engine do pool
+        int workersOcr = ocrWorkers > 0 ? ocrWorkers : tesseractPool.getTamanho();
+        int capacidadeOcr = ocrCapacidade > 0 ? ocrCapacidade : workersOcr;
+
+        this.descoberta = new EstagioPipeline<>("descoberta", descobertaWorkers, descobertaCapacidade,
+                this::identificar);
+        // Rodizio entre hidrometros antes de decodificar: a fila do OCR e curta e segue esta ordem
+        this.filaDecodificacao = new FilaJustaPorChave<>(decodificacaoCapacidade, ImagemHidrometro::getShaHidrometro,
+                coalescenciaMaxPorHidrometro, coalescenciaJanelaMs, this::coalescida);
+        this.decodificacao = new EstagioPipeline<>("decodificacao", decodificacaoWorkers, filaDecodificacao,
+                leituraHidrometroService::decodificarImagem);
+        this.ocr = new EstagioPipeline<>("ocr", workersOcr, capacidadeOcr,
+                leituraHidrometroService::reconhecerLeitura);
+        this.validacao = new EstagioPipeline<>("validacao", validacaoWorkers, validacaoCapacidade,
+                leituraHidrometroService::validarLeitura);
+        // Leituras aceitas sao gravadas em lote, com um insert JDBC em batch por transacao
+        this.persistencia = EstagioPipeline.emLote("persistencia", persistenciaWorkers, persistenciaCapacidade,
+                persistenciaLote, persistenciaJanelaMs, leituraHidrometroService::registrarLeituras);
+
+        descoberta.conectar(decodificacao).conectar(ocr).conectar(validacao).conectar(persistencia)
+                .finalizarEm(resultado -> ledger.concluir(resultado.getArquivo(), SituacaoIngestao.REGISTRADA));
+
+        descoberta.aoDescartar(ledger::liberar).aoFalhar(ledger::liberar);
+        decodificacao.aoDescartar(item -> ledger.concluir(item.getArquivo(), SituacaoIngestao.ILEGIVEL))
+                .aoFalhar(item -> ledger.liberar(item.getArquivo()));
+        ocr.aoDescartar(item -> ledger.concluir(item.getArquivo(), SituacaoIngestao.SEM_LEITURA))
+                .aoFalhar(item -> ledger.liberar(item.getArquivo()));
+        validacao.aoDescartar(resultado -> ledger.concluir(resultado.getArquivo(),
+                        resultado.isSemAlteracao() ? SituacaoIngestao.SEM_ALTERACAO : SituacaoIngestao.REJEITADA))
+                .aoFalhar(resultado -> ledger.liberar(resultado.getArquivo()));
+        persistencia.aoDescartar(resultado -> ledger.concluir(resultado.getArquivo(), SituacaoIngestao.REJEITADA))
+                .aoFalhar(resultado -> ledger.liberar(resultado.getArquivo()));
+
+        retentativas.aoVencer(this::resubmeter);
+
+        // Reenvio fora da thread que concluiu: ela pode ser um worker do proprio pipeline,
+        // e bloquear na descoberta cheia fecharia um ciclo entre os estagios
+        this.reenvios = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Pipeline-reenvio");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ledger.aoAlterarEmAndamento(this::reenviarAlterado);
+
+        estagios().forEach(metricas::monitorarFila);
+        metricas.monitorar("cagepa.ingestao.retentativas", "Imagens aguardando nova tentativa",
+                retentativas, FilaRetentativas::getPendentes);
+        metricas.monitorar("cagepa.cluster.arrendadas", "Imagens arrendadas por esta instancia",
+                reivindicacoes, ReivindicacaoImagens::getArrendadas);
+
+        if (reivindicacoes.isHabilitado()) {
+            ledger.adicionarObservador(new LedgerIngestao.Observador() {
+                @Override
+                public void concluido(File arquivo, SituacaoIngestao situacao, long nanosDesdeReserva) {
+                    reivindicacoes.concluir(arquivo);
+                }
+
+                @Override
+                public void liberado(File arquivo) {
+                    reivindicacoes.liberar(arquivo);
+                }
+            });
+        }
+    }
+
+    public void iniciar() {
+        iniciar(true);
+    }
+
+    /**
+     * Inicia os estágios; com o cluster habilitado e arrendar = false, a instância não arrenda
+     * imagens da tabela de reivindicações (por exemplo, no backfill, que só processa o que submete).
+     */
+    public synchronized void iniciar(boolean arrendar) {
+        estagios().forEach(EstagioPipeline::iniciar);
+        iniciado = true;
+        if (arrendar && reivindicacoes.isHabilitado() && arrendamento == null) {
+            arrendamento = new Thread(this::arrendarContinuamente, "Pipeline-arrendamento");
+            arrendamento.setDaemon(true);
+            arrendamento.start();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void parar() {
+        iniciado = false;
+        if (arrendamento != null) {
+            arrendamento.interrupt();
+            arrendamento = null;
+        }
+        estagios().forEach(EstagioPipeline::parar);
+        reenvios.shutdownNow();
+    }
+
+    /**
+     * Entrega um arquivo encontrado por um watcher: com o cluster habilitado, publica na tabela
+     * de reivindicações para qualquer instância processar; sem ele, enfileira localmente.
+     *
+     * @return false se o arquivo já foi publicado ou processado sem alterações
+     */
+    public boolean publicar(File arquivo, String entrada) throws InterruptedException {
+        if (!reivindicacoes.isHabilitado()) {
+            return submeter(arquivo, entrada);
+        }
+        if (retentativas.aguardando(arquivo) || ledger.jaProcessado(arquivo)) {
+            return false;
+        }
+        if (reivindicacoes.publicar(arquivo)) {
+            return true;
+        }
+        // Ja publicada: se outra instancia a concluiu, o ledger local passa a saber e as varreduras param de oferece-la
+        if (reivindicacoes.concluida(arquivo)) {
+            ledger.registrarRemota(arquivo);
+        }
+        return false;
+    }
+
+    /**
+     * Enfileira um arquivo para ingestão, bloqueando se a descoberta estiver cheia.
+     *
+     * @return false se o arquivo já está em andamento ou já foi processado sem alterações
+     */
+    public boolean submeter(File arquivo) throws InterruptedException {
+        return submeter(arquivo, descoberta);
+    }
+
+    /**
+     * Enfileira um arquivo na descoberta própria da entrada, criada no primeiro uso.
+     *
+     * @return false se o arquivo já está em andamento ou já foi processado sem alterações
+     */
+    public boolean submeter(File arquivo, String entrada) throws InterruptedException {
+        return submeter(arquivo, descobertaPorEntrada.computeIfAbsent(entrada, this::criarDescoberta));
+    }
+
+    private boolean submeter(File arquivo, EstagioPipeline<File, ImagemHidrometro> destino)
+            throws InterruptedException {
+        return submeter(arquivo, destino, () -> { });
+    }
+
+    /**
+     * Como {@link #submeter(File, EstagioPipeline)}, executando aoReservar com a reserva já
+     * feita e antes de o arquivo entrar na fila.
+     */
+    private boolean submeter(File arquivo, EstagioPipeline<File, ImagemHidrometro> destino, Runnable aoReservar)
+            throws InterruptedException {
+        if (retentativas.aguardando(arquivo) || !ledger.reservar(arquivo)) {
+            return false;
+        }
+        aoReservar.run();
+        try {
+            destino.submeter(arquivo);
+            return true;
+        } catch (InterruptedException e) {
+            ledger.liberar(arquivo);
+            throw e;
+        }
+    }
+
+    /**
+     * Quantas imagens de cada hidrômetro foram coalescidas em rajadas, desde a partida.
+     */
+    public Map<String, Long> getCoalescidasPorHidrometro() {
+        return filaDecodificacao.getCoalescidasPorChave();
+    }
+
+    /**
+     * Reenvia um arquivo cuja retentativa venceu, ignorando o desfecho anterior no ledger.
+     */
+    private void resubmeter(File arquivo) {
+        if (!ledger.reservarNovamente(arquivo)) {
+            return;
+        }
+        try {
+            descoberta.submeter(arquivo);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ledger.liberar(arquivo);
+        }
+    }
+
+    /**
+     * Reenvia um arquivo reescrito enquanto a versão anterior estava em andamento. Em cluster
+     * a nova versão já tem sua própria reivindicação, publicada pelo watcher.
+     */
+    private void reenviarAlterado(File arquivo) {
+        if (reivindicacoes.isHabilitado()) {
+            return;
+        }
+        reenvios.execute(() -> {
+            try {
+                submeter(arquivo, descoberta);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    public LedgerIngestao getLedger() {
+        return ledger;
+    }
+
+    public List<EstagioPipeline<?, ?>> estagios() {
+        List<EstagioPipeline<?, ?>> estagios = new ArrayList<>(descobertaPorEntrada.values());
+        estagios.addAll(List.of(descoberta, decodificacao, ocr, validacao, persistencia));
+        return estagios;
+    }
+
+    /**
+     * Arrenda lotes da tabela de reivindicações enquanto a descoberta tiver espaço, de modo que a
+     * instância só pega o trabalho que consegue absorver e o restante fica para as demais.
+     */
+    private void arrendarContinuamente() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // Sem autorizacao a descoberta esta pausada: o trabalho fica para as demais instancias
+                int espaco = adminProxyFachada.ingestaoAutorizada()
+                        ? Math.min(clusterLote, descoberta.getCapacidadeRestante()) : 0;
+                List<ReivindicacaoImagens.Arrendamento> arrendados =
+                        espaco > 0 ? reivindicacoes.arrendar(espaco) : List.of();
+                if (arrendados.isEmpty()) {
+                    Thread.sleep(clusterIntervaloMs);
+                    continue;
+                }
+                for (ReivindicacaoImagens.Arrendamento arrendamento : arrendados) {
+                    // Vinculado entre a reserva e a fila: o desfecho pode chegar antes de submeter retornar
+                    if (!submeter(arrendamento.arquivo(), descoberta, () -> reivindicacoes.vincular(arrendamento))) {
+                        recusado(arrendamento);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                System.err.println("[Pipeline] Erro ao arrendar imagens do cluster: " + e.getMessage());
+                try {
+                    Thread.sleep(clusterIntervaloMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Decide o destino de uma reivindicação arrendada que a descoberta local recusou.
+     */
+    private void recusado(ReivindicacaoImagens.Arrendamento arrendamento) {
+        File arquivo = arrendamento.arquivo();
+        if (ledger.jaProcessado(arquivo, arrendamento.tamanho(), arrendamento.mtime())) {
+            // Esta versao ja tem desfecho no ledger local, que esta a frente da tabela
+            reivindicacoes.concluir(arrendamento);
+        } else if (!arquivo.isFile()) {
+            reivindicacoes.liberar(arrendamento);
+        } else if (arquivo.length() != arrendamento.tamanho() || arquivo.lastModified() != arrendamento.mtime()) {
+            // Versao substituida no disco: a nova tem a propria reivindicacao, e esta nunca seria processada
+            reivindicacoes.concluir(arrendamento);
+        } else {
+            // Em andamento ou aguardando retentativa aqui: volta para a tabela em vez de se perder
+            reivindicacoes.devolver(arrendamento);
+        }
+    }
+
+    /**
+     * Descoberta: imagens com conteúdo já ingerido são concluídas como duplicadas, e não
+     * liberadas, para não voltarem a cada varredura.
+     */
+    private ImagemHidrometro identificar(File arquivo) {
+        if (!aguardarAutorizacao()) {
+            // Pipeline parando: a reserva e liberada sem desfecho
+            return null;
+        }
+        ImagemHidrometro item = leituraHidrometroService.identificarImagem(arquivo);
+        if (item != null && item.isConteudoRepetido()) {
+            ledger.concluir(arquivo, SituacaoIngestao.DUPLICADA);
+            // O descarte que segue libera uma reserva que ja nao existe: sem efeito
+            return null;
+        }
+        return item;
+    }
+
+    /**
+     * Segura o worker da descoberta enquanto a ingestão não está autorizada.
+     *
+     * @return false se a thread foi interrompida enquanto aguardava
+     */
+    private boolean aguardarAutorizacao() {
+        if (adminProxyFachada.ingestaoAutorizada()) {
+            return true;
+        }
+        if (pausada.compareAndSet(false, true)) {
+            System.err.println("Aviso: Ingestao nao autorizada: descoberta pausada ate o login de um administrador");
+        }
+        try {
+            do {
+                Thread.sleep(PAUSA_AUTORIZACAO_MS);
+            } while (!adminProxyFachada.ingestaoAutorizada());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (pausada.compareAndSet(true, false)) {
+            System.out.println("[Pipeline] Ingestao autorizada novamente: descoberta retomada");
+        }
+        return true;
+    }
+
+    private void coalescida(ImagemHidrometro item) {
+        System.out.println("[Pipeline] Imagem coalescida (rajada do hidrometro " + item.getShaHidrometro() + "): "
+                + item.getArquivo().getName());
+        ledger.concluir(item.getArquivo(), SituacaoIngestao.COALESCIDA);
+    }
+
+    private synchronized EstagioPipeline<File, ImagemHidrometro> criarDescoberta(String entrada) {
+        EstagioPipeline<File, ImagemHidrometro> estagio = new EstagioPipeline<>("descoberta-" + entrada,
+                descobertaWorkers, descobertaCapacidade, this::identificar);
+        estagio.conectar(decodificacao);
+        estagio.aoDescartar(ledger::liberar).aoFalhar(ledger::liberar);
+        metricas.monitorarFila(estagio);
+        if (iniciado) {
+            estagio.iniciar();
+        }
+        return estagio;
+    }
+}
@@ -0,0 +1,313 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import com.fachada.cagepa.fachada_cagepa.infra.entities.ReivindicacaoImagem;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Distribuição das imagens entre várias instâncias que compartilham o volume de imagens e o banco.
+ *
+ * Os watchers publicam cada arquivo na tabela reivindicacao_imagem (uma linha por caminho,
+ * tamanho e mtime; publicar de novo não tem efeito). Cada instância arrenda lotes de linhas
+ * pendentes com SELECT ... FOR UPDATE SKIP LOCKED, de modo que duas instâncias nunca pegam a
+ * mesma imagem e nenhuma espera pelo lock da outra. Enquanto processa, a instância renova os
+ * próprios arrendamentos; se ela cair, os arrendamentos vencem e as imagens voltam a ser
+ * arrendáveis pelas demais.
+ *
+ * Uma imagem liberada sem desfecho (descartada na descoberta ou com falha) volta a pendente com
+ * expira_em adiado: nas linhas pendentes a coluna marca a partir de quando a linha pode ser
+ * arrendada, de modo que outra instância, ou esta depois de recarregar seus filtros, tente de novo.
+ *
+ * Os arrendamentos desta instância são identificados pelo id da linha, e não pelo caminho: uma
+ * nova versão do arquivo arrendada enquanto a anterior está em processamento não apaga a
+ * anterior, e cada uma é concluída ou devolvida por conta própria. Linhas concluídas ficam na
+ * tabela pelo período de retenção, para que as varreduras das demais instâncias encontrem o
+ * desfecho e o registrem nos próprios ledgers, e depois são removidas pelo heartbeat.
+ *
+ * Os horários usam o relógio do banco (em UTC), e não o das instâncias.
+ */
+@Component
+public class ReivindicacaoImagens {
+
+    private static final String AGORA = "(now() AT TIME ZONE 'UTC')";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean habilitado;
+    private final String instancia;
+    private final long arrendamentoMs;
+    private final String duracaoArrendamento;
+    private final String atrasoDevolucao;
+    private final String retencaoConcluidas;
+    // Id da linha -> arrendamento desta instancia
+    private final Map<Long, Arrendamento> arrendadas = new ConcurrentHashMap<>();
+    // Caminho -> id do arrendamento entregue ao pipeline local, no maximo um por caminho
+    private final Map<String, Long> emProcessamento = new ConcurrentHashMap<>();
+    private ScheduledExecutorService heartbeat;
+
+    public ReivindicacaoImagens(JdbcTemplate jdbcTemplate,
+                                @Value("${cagepa.cluster.habilitado:false}") boolean habilitado,
+                                @Value("${cagepa.cluster.instancia:}") String instancia,
+                                @Value("${cagepa.cluster.arrendamento-ms:120000}") long arrendamentoMs,
+                                @Value("${cagepa.cluster.atraso-devolucao-ms:60000}") long atrasoDevolucaoMs,
+                                @Value("${cagepa.cluster.retencao-concluidas-ms:86400000}") long retencaoConcluidasMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.habilitado = habilitado;
+        this.instancia = instancia == null || instancia.isBlank() ? instanciaPadrao() : instancia.trim();
+        this.arrendamentoMs = arrendamentoMs;
+        this.duracaoArrendamento = arrendamentoMs + " milliseconds";
+        this.atrasoDevolucao = atrasoDevolucaoMs + " milliseconds";
+        this.retencaoConcluidas = retencaoConcluidasMs + " milliseconds";
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            return;
+        }
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Cluster-Heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalo = Math.max(1000, arrendamentoMs / 3);
+        heartbeat.scheduleWithFixedDelay(this::renovar, intervalo, intervalo, TimeUnit.MILLISECONDS);
+        System.out.println("[Cluster] Instancia " + instancia + " com arrendamentos de " + arrendamentoMs + " ms");
+    }
+
+    @PreDestroy
+    public void parar() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        // Devolve o que nao chegou a ser concluido, sem esperar o vencimento
+        arrendadas.keySet().forEach(id -> devolver(id, "0 milliseconds"));
+        arrendadas.clear();
+        emProcessamento.clear();
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    public String getInstancia() {
+        return instancia;
+    }
+
+    public int getArrendadas() {
+        return arrendadas.size();
+    }
+
+    /**
+     * Publica o arquivo para qualquer instância processar.
+     *
+     * @return false se o arquivo, com o mesmo tamanho e mtime, já foi publicado
+     */
+    public boolean publicar(File arquivo) {
+        int inseridas = jdbcTemplate.update(
+                "INSERT INTO reivindicacao_imagem (caminho, tamanho, mtime, situacao, publicada_em) "
+                        + "VALUES (?, ?, ?, '" + ReivindicacaoImagem.PENDENTE + "', " + AGORA + ") "
+                        + "ON CONFLICT (caminho, tamanho, mtime) DO NOTHING",
+                chave(arquivo), arquivo.length(), arquivo.lastModified());
+        return inseridas > 0;
+    }
+
+    /**
+     * Indica se o arquivo, com o tamanho e mtime atuais, foi concluído por alguma instância.
+     */
+    public boolean concluida(File arquivo) {
+        Boolean concluida = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM reivindicacao_imagem WHERE caminho = ? AND tamanho = ? AND mtime = ? "
+                        + "AND situacao = '" + ReivindicacaoImagem.CONCLUIDA + "')",
+                Boolean.class, chave(arquivo), arquivo.length(), arquivo.lastModified());
+        return Boolean.TRUE.equals(concluida);
+    }
+
+    /**
+     * Arrenda até o máximo informado de imagens pendentes (já liberadas, se foram devolvidas com
+     * atraso) ou com arrendamento vencido, na ordem de publicação. Linhas travadas por outra
+     * instância são puladas.
+     */
+    public List<Arrendamento> arrendar(int maximo) {
+        List<Map<String, Object>> linhas = jdbcTemplate.queryForList(
+                "UPDATE reivindicacao_imagem SET situacao = '" + ReivindicacaoImagem.EM_ANDAMENTO + "', "
+                        + "instancia = ?, expira_em = " + AGORA + " + CAST(? AS interval) "
+                        + "WHERE id IN (SELECT id FROM reivindicacao_imagem "
+                        + "WHERE (situacao = '" + ReivindicacaoImagem.PENDENTE + "' "
+                        + "AND (expira_em IS NULL OR expira_em <= " + AGORA + ")) "
+                        + "OR (situacao = '" + ReivindicacaoImagem.EM_ANDAMENTO + "' AND expira_em < " + AGORA + ") "
+                        + "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) "
+                        + "RETURNING id, caminho, tamanho, mtime",
+                instancia, duracaoArrendamento, maximo);
+
+        return linhas.stream().map(linha -> {
+            Arrendamento arrendamento = new Arrendamento(((Number) linha.get("id")).longValue(),
+                    new File((String) linha.get("caminho")), ((Number) linha.get("tamanho")).longValue(),
+                    ((Number) linha.get("mtime")).longValue());
+            arrendadas.put(arrendamento.id(), arrendamento);
+            return arrendamento;
+        }).toList();
+    }
+
+    /**
+     * Vincula o arrendamento ao caminho ao entregá-lo ao pipeline local, cujos desfechos chegam
+     * pelo caminho do arquivo. Chamado com o arquivo já reservado no ledger, que admite uma
+     * única reserva por caminho: outra versão arrendada enquanto esta está em processamento é
+     * recusada pela reserva e nunca é vinculada.
+     */
+    public void vincular(Arrendamento arrendamento) {
+        emProcessamento.put(chave(arrendamento.arquivo()), arrendamento.id());
+    }
+
+    /**
+     * Marca como concluída a imagem arrendada por esta instância e em processamento no pipeline local.
+     */
+    public void concluir(File arquivo) {
+        Long id = emProcessamento.remove(chave(arquivo));
+        if (id != null) {
+            concluir(id);
+        }
+    }
+
+    /**
+     * Marca o arrendamento como concluído, sem passar pelo pipeline local.
+     */
+    public void concluir(Arrendamento arrendamento) {
+        emProcessamento.remove(chave(arrendamento.arquivo()), arrendamento.id());
+        concluir(arrendamento.id());
+    }
+
+    /**
+     * Devolve a imagem em processamento no pipeline local, sem desfecho, para ser arrendada de
+     * novo depois do atraso configurado. Se o arquivo não existe mais, a publicação é removida:
+     * o watcher a publica de novo se ele reaparecer.
+     */
+    public void liberar(File arquivo) {
+        Long id = emProcessamento.remove(chave(arquivo));
+        if (id != null) {
+            liberar(id, arquivo);
+        }
+    }
+
+    /**
+     * Como {@link #liberar(File)}, para um arrendamento que não chegou ao pipeline local.
+     */
+    public void liberar(Arrendamento arrendamento) {
+        emProcessamento.remove(chave(arrendamento.arquivo()), arrendamento.id());
+        liberar(arrendamento.id(), arrendamento.arquivo());
+    }
+
+    /**
+     * Devolve o arrendamento sem processá-lo, para ser arrendado de novo depois do atraso configurado.
+     */
+    public void devolver(Arrendamento arrendamento) {
+        emProcessamento.remove(chave(arrendamento.arquivo()), arrendamento.id());
+        if (arrendadas.remove(arrendamento.id()) != null) {
+            devolver(arrendamento.id(), atrasoDevolucao);
+        }
+    }
+
+    /**
+     * Conclui a linha; expira_em passa a marcar quando ela pode ser removida.
+     */
+    private void concluir(long id) {
+        Arrendamento arrendamento = arrendadas.remove(id);
+        if (arrendamento == null) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("UPDATE reivindicacao_imagem SET situacao = '" + ReivindicacaoImagem.CONCLUIDA + "', "
+                    + "expira_em = " + AGORA + " + CAST(? AS interval) WHERE id = ? AND instancia = ?",
+                    retencaoConcluidas, id, instancia);
+        } catch (RuntimeException e) {
+            // O arrendamento vence e outra instancia repete; a validacao rejeita a leitura duplicada
+            System.err.println("[Cluster] Erro ao concluir " + arrendamento.arquivo().getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void liberar(long id, File arquivo) {
+        if (arrendadas.remove(id) == null) {
+            return;
+        }
+        if (arquivo.isFile()) {
+            devolver(id, atrasoDevolucao);
+            return;
+        }
+        try {
+            jdbcTemplate.update("DELETE FROM reivindicacao_imagem WHERE id = ? AND instancia = ?", id, instancia);
+        } catch (RuntimeException e) {
+            System.err.println("[Cluster] Erro ao liberar " + arquivo.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void devolver(long id, String atraso) {
+        try {
+            jdbcTemplate.update("UPDATE reivindicacao_imagem SET situacao = '" + ReivindicacaoImagem.PENDENTE + "', "
+                    + "instancia = NULL, expira_em = " + AGORA + " + CAST(? AS interval) "
+                    + "WHERE id = ? AND instancia = ?", atraso, id, instancia);
+        } catch (RuntimeException e) {
+            System.err.println("[Cluster] Erro ao devolver arrendamento " + id + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Heartbeat: estende os arrendamentos em andamento desta instância com um único update e
+     * remove as linhas concluídas cuja retenção venceu. Só as linhas que a instância acompanha
+     * são renovadas: uma linha esquecida, por exemplo de uma execução anterior com o mesmo nome
+     * de instância, vence e volta para as demais.
+     */
+    private void renovar() {
+        if (!arrendadas.isEmpty()) {
+            String ids = arrendadas.keySet().stream().map(String::valueOf)
+                    .collect(Collectors.joining(",", "{", "}"));
+            try {
+                jdbcTemplate.update("UPDATE reivindicacao_imagem SET expira_em = " + AGORA + " + CAST(? AS interval) "
+                                + "WHERE id = ANY (CAST(? AS bigint[])) AND instancia = ? "
+                                + "AND situacao = '" + ReivindicacaoImagem.EM_ANDAMENTO + "'",
+                        duracaoArrendamento, ids, instancia);
+            } catch (RuntimeException e) {
+                System.err.println("[Cluster] Erro ao renovar arrendamentos: " + e.getMessage());
+            }
+        }
+        try {
+            // Linhas concluidas antes da retencao nao tem expira_em: contam a partir da publicacao
+            jdbcTemplate.update("DELETE FROM reivindicacao_imagem WHERE situacao = '" + ReivindicacaoImagem.CONCLUIDA
+                    + "' AND COALESCE(expira_em, publicada_em + CAST(? AS interval)) < " + AGORA, retencaoConcluidas);
+        } catch (RuntimeException e) {
+            System.err.println("[Cluster] Erro ao remover reivindicacoes concluidas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Imagem arrendada: id da linha, com o tamanho e o mtime com que foi publicada.
+     */
+    public record Arrendamento(long id, File arquivo, long tamanho, long mtime) {
+    }
+
+    private static String chave(File arquivo) {
+        return arquivo.getAbsolutePath();
+    }
+
+    private static String instanciaPadrao() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "instancia";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+}
@@ -0,0 +1,23 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+/**
+ * Desfecho final de uma imagem no pipeline, gravado no ledger de ingestão.
+ */
+public enum SituacaoIngestao {
+    /** Leitura gravada no banco. */
+    REGISTRADA,
+    /** Leitura reconhecida, mas não avança em relação à última registrada. */
+    REJEITADA,
+    /** Arquivo não pôde ser decodificado como imagem. */
+    ILEGIVEL,
+    /** Nenhuma estratégia de OCR reconheceu o valor. */
+    SEM_LEITURA,
+    /** Descartada em uma rajada do mesmo hidrômetro, em favor das imagens mais novas. */
+    COALESCIDA,
+    /** Conteúdo idêntico ao de uma imagem já ingerida (reenvio ou cópia). */
+    DUPLICADA,
+    /** Janela de dígitos visualmente igual à da última imagem lida; nenhuma leitura nova. */
+    SEM_ALTERACAO,
+    /** Concluída por outra instância do cluster, segundo a tabela de reivindicações. */
+    REMOTA
+}
@@ -1,9 +1,26 @@
 package com.fachada.cagepa.fachada_cagepa.padroes.strategy;
 
+import net.sourceforge.tess4j.Tesseract;
+
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 public interface HidrometroOCRStrategy {
     String extractMeterId(String filename);
-    Long extractMeterValue(BufferedImage image);
+    Long extractMeterValue(BufferedImage image, Tesseract tesseract);
     String getMeterType();
+
+    /**
+     * Região do quadro que a estratégia lê, ou null se ela precisa da imagem inteira.
+     */
+    default Rectangle getRoi() {
+        return null;
+    }
+
+    /**
+     * Maior subamostragem de decodificação que a estratégia tolera (1 = resolução total).
+     */
+    default int getMaxSubsampling() {
+        return 1;
+    }
 }
@@ -0,0 +1,247 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.strategy;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point2f;
+import org.bytedeco.opencv.opencv_core.RotatedRect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.bytedeco.opencv.global.opencv_core.BORDER_REPLICATE;
+import static org.bytedeco.opencv.global.opencv_core.bitwise_not;
+import static org.bytedeco.opencv.global.opencv_core.countNonZero;
+import static org.bytedeco.opencv.global.opencv_core.findNonZero;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Pré-processamento nativo (OpenCV via JavaCV) da região de interesse antes do Tesseract:
+ * escala de cinza, ampliação, limiarização adaptativa e correção de inclinação.
+ *
+ * A limiarização e a correção de inclinação esperam dígitos escuros sobre fundo claro. Visores
+ * invertidos (dígitos claros, como em LCDs com luz de fundo) são detectados pela limiarização
+ * de Otsu da ROI: se os pixels claros forem minoria, eles são os dígitos, e a imagem em cinza é
+ * invertida antes de limiarizar. A detecção supõe que os dígitos ocupam menos da metade da ROI.
+ *
+ * Mantém o tempo acumulado de pré-processamento e de OCR. Com comparacao-a-cada = N, uma em
+ * cada N regiões é lida também sem pré-processamento, e o resumo mostra o tempo e a taxa de
+ * leitura dos dois caminhos sobre as mesmas regiões.
+ */
+@Component
+public class PreprocessadorRoi {
+
+    private static final double INCLINACAO_MINIMA = 0.5;
+    private static final double INCLINACAO_MAXIMA = 15.0;
+
+    private final boolean habilitado;
+    private final double fatorAmpliacao;
+    private final int compararACada;
+    private volatile boolean nativoDisponivel = true;
+
+    private final LongAdder regioes = new LongAdder();
+    private final LongAdder regioesInvertidas = new LongAdder();
+    private final LongAdder nanosPreprocessamento = new LongAdder();
+    private final LongAdder nanosOcr = new LongAdder();
+
+    // Comparacao amostrada com o OCR da ROI original, sobre as mesmas regioes
+    private final AtomicLong candidatasComparacao = new AtomicLong();
+    private final LongAdder comparacoes = new LongAdder();
+    private final LongAdder lidasPreparada = new LongAdder();
+    private final LongAdder lidasOriginal = new LongAdder();
+    private final LongAdder concordantes = new LongAdder();
+    private final LongAdder nanosPreparada = new LongAdder();
+    private final LongAdder nanosOriginal = new LongAdder();
+
+    public PreprocessadorRoi(@Value("${cagepa.ocr.preprocessamento.habilitado:true}") boolean habilitado,
+                             @Value("${cagepa.ocr.preprocessamento.fator-ampliacao:2.0}") double fatorAmpliacao,
+                             @Value("${cagepa.ocr.preprocessamento.comparacao-a-cada:0}") int compararACada) {
+        this.habilitado = habilitado;
+        this.fatorAmpliacao = fatorAmpliacao;
+        this.compararACada = compararACada;
+    }
+
+    /**
+     * Prepara a ROI para OCR de uma linha de dígitos. Se o OpenCV nativo não puder
+     * ser carregado, devolve a ROI original.
+     */
+    public BufferedImage preparar(BufferedImage roi) {
+        if (!habilitado || !nativoDisponivel) {
+            return roi;
+        }
+
+        long inicio = System.nanoTime();
+        try (PointerScope escopo = new PointerScope();
+             OpenCVFrameConverter.ToMat conversorMat = new OpenCVFrameConverter.ToMat();
+             Java2DFrameConverter conversorImagem = new Java2DFrameConverter()) {
+
+            Mat original = conversorMat.convert(conversorImagem.convert(copiarBgr(roi)));
+            Mat cinza = paraCinza(original);
+
+            Mat ampliada = new Mat();
+            resize(cinza, ampliada, new Size(), fatorAmpliacao, fatorAmpliacao, INTER_CUBIC);
+
+            if (digitosClaros(ampliada)) {
+                bitwise_not(ampliada, ampliada);
+                regioesInvertidas.increment();
+            }
+
+            Mat binaria = new Mat();
+            adaptiveThreshold(ampliada, binaria, 255, ADAPTIVE_THRESH_GAUSSIAN_C, THRESH_BINARY, 31, 10);
+
+            Mat corrigida = corrigirInclinacao(binaria);
+            Frame quadro = conversorMat.convert(corrigida);
+            return conversorImagem.convert(quadro);
+        } catch (UnsatisfiedLinkError | NoClassDefFoundError e) {
+            nativoDisponivel = false;
+            System.err.println("[PreprocessadorRoi] OpenCV nativo indisponivel, usando ROI original: " + e.getMessage());
+            return roi;
+        } catch (RuntimeException e) {
+            return roi;
+        } finally {
+            nanosPreprocessamento.add(System.nanoTime() - inicio);
+            regioes.increment();
+        }
+    }
+
+    /**
+     * Registra o tempo do Tesseract sobre uma ROI já preparada.
+     */
+    public void registrarOcr(long nanos) {
+        nanosOcr.add(nanos);
+    }
+
+    /**
+     * Indica se esta região deve ser lida também sem pré-processamento, para comparação.
+     */
+    public boolean sortearComparacao() {
+        return compararACada > 0 && isAtivo() && candidatasComparacao.incrementAndGet() % compararACada == 0;
+    }
+
+    /**
+     * Registra uma região lida pelos dois caminhos: tempo de pré-processamento mais OCR e valor
+     * lido com a ROI preparada, tempo de OCR e valor lido com a ROI original (null = sem leitura).
+     */
+    public void registrarComparacao(long nanosComPreparo, Long valorPreparada, long nanosSemPreparo, Long valorOriginal) {
+        comparacoes.increment();
+        nanosPreparada.add(nanosComPreparo);
+        nanosOriginal.add(nanosSemPreparo);
+        if (valorPreparada != null) {
+            lidasPreparada.increment();
+        }
+        if (valorOriginal != null) {
+            lidasOriginal.increment();
+        }
+        if (valorPreparada != null && valorPreparada.equals(valorOriginal)) {
+            concordantes.increment();
+        }
+    }
+
+    public double getMediaPreprocessamentoMs() {
+        long total = regioes.sum();
+        return total == 0 ? 0.0 : nanosPreprocessamento.sum() / (double) total / 1_000_000.0;
+    }
+
+    public double getMediaOcrMs() {
+        long total = regioes.sum();
+        return total == 0 ? 0.0 : nanosOcr.sum() / (double) total / 1_000_000.0;
+    }
+
+    public long getRegioes() {
+        return regioes.sum();
+    }
+
+    public long getRegioesInvertidas() {
+        return regioesInvertidas.sum();
+    }
+
+    public boolean isAtivo() {
+        return habilitado && nativoDisponivel;
+    }
+
+    /**
+     * Copia a ROI (que compartilha o raster da imagem inteira) para uma imagem BGR compacta.
+     */
+    private BufferedImage copiarBgr(BufferedImage roi) {
+        BufferedImage copia = new BufferedImage(roi.getWidth(), roi.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D grafico = copia.createGraphics();
+        try {
+            grafico.drawImage(roi, 0, 0, null);
+        } finally {
+            grafico.dispose();
+        }
+        return copia;
+    }
+
+    @Override
+    public String toString() {
+        String resumo = String.format(
+                "Pre-processamento %s: regioes=%d (invertidas=%d), pre-processamento medio=%.2f ms, OCR medio=%.2f ms",
+                isAtivo() ? "ativo" : "inativo", getRegioes(), getRegioesInvertidas(), getMediaPreprocessamentoMs(),
+                getMediaOcrMs());
+        long amostras = comparacoes.sum();
+        if (amostras == 0) {
+            return resumo;
+        }
+        return resumo + String.format(
+                "%n  Comparacao em %d regioes: com pre-processamento %.1f%% lidas em %.2f ms,"
+                        + " sem pre-processamento %.1f%% lidas em %.2f ms, mesmo valor em %.1f%%",
+                amostras, lidasPreparada.sum() * 100.0 / amostras, nanosPreparada.sum() / (double) amostras / 1_000_000.0,
+                lidasOriginal.sum() * 100.0 / amostras, nanosOriginal.sum() / (double) amostras / 1_000_000.0,
+                concordantes.sum() * 100.0 / amostras);
+    }
+
+    private Mat paraCinza(Mat original) {
+        if (original.channels() == 1) {
+            return original;
+        }
+        Mat cinza = new Mat();
+        cvtColor(original, cinza, original.channels() == 4 ? COLOR_BGRA2GRAY : COLOR_BGR2GRAY);
+        return cinza;
+    }
+
+    /**
+     * Separa a ROI em claro e escuro pelo limiar de Otsu: pixels claros em minoria são dígitos
+     * acesos sobre fundo escuro.
+     */
+    private boolean digitosClaros(Mat cinza) {
+        Mat otsu = new Mat();
+        threshold(cinza, otsu, 0, 255, THRESH_BINARY | THRESH_OTSU);
+        return countNonZero(otsu) * 2L < otsu.total();
+    }
+
+    private Mat corrigirInclinacao(Mat binaria) {
+        // Digitos escuros sobre fundo claro: inverte para que os pixels de texto sejam nao nulos
+        Mat invertida = new Mat();
+        bitwise_not(binaria, invertida);
+        Mat pontos = new Mat();
+        findNonZero(invertida, pontos);
+        if (pontos.rows() < 10) {
+            return binaria;
+        }
+
+        RotatedRect caixa = minAreaRect(pontos);
+        double angulo = caixa.angle();
+        if (angulo > 45) {
+            angulo -= 90;
+        } else if (angulo < -45) {
+            angulo += 90;
+        }
+        if (Math.abs(angulo) < INCLINACAO_MINIMA || Math.abs(angulo) > INCLINACAO_MAXIMA) {
+            return binaria;
+        }
+
+        Mat rotacao = getRotationMatrix2D(new Point2f(binaria.cols() / 2f, binaria.rows() / 2f), angulo, 1.0);
+        Mat corrigida = new Mat();
+        warpAffine(binaria, corrigida, rotacao, binaria.size(), INTER_LINEAR, BORDER_REPLICATE, new Scalar());
+        return corrigida;
+    }
+}
@@ -0,0 +1,46 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.strategy;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Hashtable;
+
+/**
+ * Associa a uma imagem decodificada parcialmente a posição de onde ela veio no quadro
+ * original e a subamostragem aplicada, para que as ROIs das estratégias, definidas em
+ * coordenadas do quadro inteiro, continuem válidas.
+ */
+public final class RegiaoImagem {
+
+    private static final String PROPRIEDADE_ORIGEM = "cagepa.regiao.origem";
+    private static final String PROPRIEDADE_SUBAMOSTRAGEM = "cagepa.regiao.subamostragem";
+
+    private RegiaoImagem() {
+    }
+
+    /**
+     * Marca a imagem com sua origem no quadro completo, sem copiar pixels.
+     */
+    public static BufferedImage comOrigem(BufferedImage regiao, Point origem, int subamostragem) {
+        Hashtable<String, Object> propriedades = new Hashtable<>();
+        propriedades.put(PROPRIEDADE_ORIGEM, new Point(origem));
+        propriedades.put(PROPRIEDADE_SUBAMOSTRAGEM, subamostragem);
+        return new BufferedImage(regiao.getColorModel(), regiao.getRaster(),
+                regiao.isAlphaPremultiplied(), propriedades);
+    }
+
+    /**
+     * Converte uma ROI em coordenadas do quadro completo para coordenadas da imagem recebida.
+     */
+    public static Rectangle paraCoordenadasDaImagem(Rectangle roi, BufferedImage imagem) {
+        Object origem = imagem.getProperty(PROPRIEDADE_ORIGEM);
+        if (!(origem instanceof Point ponto)) {
+            return roi;
+        }
+
+        Object valor = imagem.getProperty(PROPRIEDADE_SUBAMOSTRAGEM);
+        int subamostragem = valor instanceof Integer inteiro && inteiro > 0 ? inteiro : 1;
+        return new Rectangle((roi.x - ponto.x) / subamostragem, (roi.y - ponto.y) / subamostragem,
+                Math.max(1, roi.width / subamostragem), Math.max(1, roi.height / subamostragem));
+    }
+}
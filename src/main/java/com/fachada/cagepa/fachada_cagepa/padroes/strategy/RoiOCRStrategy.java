@@ -0,0 +1,69 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.strategy;
+
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Base das estratégias que leem o valor de uma região fixa da imagem:
+ * recorta a ROI, pré-processa e aplica OCR de dígitos.
+ */
+public abstract class RoiOCRStrategy implements HidrometroOCRStrategy {
+
+    private final PreprocessadorRoi preprocessador;
+
+    protected RoiOCRStrategy(PreprocessadorRoi preprocessador) {
+        this.preprocessador = preprocessador;
+    }
+
+    /**
+     * Região do quadro onde ficam os dígitos do hidrômetro.
+     */
+    @Override
+    public abstract Rectangle getRoi();
+
+    @Override
+    public String extractMeterId(String filename) {
+        // Remove extensões de arquivo (png, jpeg, jpg, etc)
+        String nameWithoutExtension = filename.replaceAll("\\.(png|jpeg|jpg|PNG|JPEG|JPG)$", "");
+        // Remove caracteres especiais mantendo apenas alfanuméricos
+        String cleaned = nameWithoutExtension.replaceAll("[^a-zA-Z0-9]", "").toUpperCase();
+        return cleaned;
+    }
+
+    @Override
+    public Long extractMeterValue(BufferedImage image, Tesseract tesseract) {
+        try {
+            // A imagem pode ter sido decodificada apenas na regiao das ROIs
+            Rectangle roi = RegiaoImagem.paraCoordenadasDaImagem(getRoi(), image);
+            BufferedImage recorte = image.getSubimage(roi.x, roi.y, roi.width, roi.height);
+            long inicioPreparo = System.nanoTime();
+            BufferedImage preparada = preprocessador.preparar(recorte);
+
+            long inicio = System.nanoTime();
+            Long valor = lerDigitos(tesseract, preparada);
+            long fim = System.nanoTime();
+            preprocessador.registrarOcr(fim - inicio);
+
+            if (preprocessador.sortearComparacao()) {
+                // Amostra: a mesma ROI sem pre-processamento, so para as estatisticas; o valor devolvido nao muda
+                Long valorOriginal = lerDigitos(tesseract, recorte);
+                preprocessador.registrarComparacao(fim - inicioPreparo, valor, System.nanoTime() - fim, valorOriginal);
+            }
+            return valor;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Long lerDigitos(Tesseract tesseract, BufferedImage regiao) {
+        try {
+            String cleaned = tesseract.doOCR(regiao).replaceAll("[^0-9]", "").trim();
+            return cleaned.isEmpty() ? null : Long.parseLong(cleaned);
+        } catch (TesseractException | RuntimeException e) {
+            return null;
+        }
+    }
+}
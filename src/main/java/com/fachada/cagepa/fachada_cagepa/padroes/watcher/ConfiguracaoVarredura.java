@@ -0,0 +1,15 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.watcher;
+
+import java.util.List;
+
+/**
+ * Parâmetros das varreduras de reconciliação do watcher.
+ *
+ * @param intervaloMs      intervalo entre varreduras periódicas quando há eventos do sistema (0 desativa)
+ * @param intervaloRedeMs  intervalo entre varreduras quando elas são o único mecanismo
+ * @param somenteVarredura ignora eventos do sistema em todas as raízes
+ * @param tiposRede        prefixos de tipos de sistema de arquivos tratados como rede (nfs, cifs...)
+ */
+record ConfiguracaoVarredura(long intervaloMs, long intervaloRedeMs, boolean somenteVarredura,
+                             List<String> tiposRede) {
+}
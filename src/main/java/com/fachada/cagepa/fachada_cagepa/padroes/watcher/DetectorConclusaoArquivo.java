@@ -0,0 +1,154 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.watcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Detecta quando um arquivo terminou de ser escrito e o emite uma única vez.
+ *
+ * Eventos repetidos do mesmo caminho (CREATE seguido de vários MODIFY) são coalescidos
+ * em uma única entrada pendente. Sem um sinal nativo de fechamento, o arquivo é
+ * considerado completo quando tamanho e mtime permanecem iguais durante a janela de
+ * estabilidade. Com inotify, IN_CLOSE_WRITE emite o arquivo imediatamente, e arquivos
+ * observados sem esse sinal usam uma janela própria, bem mais longa.
+ */
+public class DetectorConclusaoArquivo {
+
+    private static final long INTERVALO_VERIFICACAO_MS = 100;
+    private static final long RETENCAO_EMITIDOS_MS = 60_000;
+
+    private final long janelaEstabilidadeMs;
+    private final Consumer<Path> destino;
+    private final Map<Path, EstadoArquivo> pendentes = new ConcurrentHashMap<>();
+    // Assinatura (tamanho/mtime) da última emissão, para descartar eventos duplicados
+    private final Map<Path, EstadoArquivo> emitidos = new ConcurrentHashMap<>();
+    private ScheduledExecutorService agendador;
+
+    public DetectorConclusaoArquivo(long janelaEstabilidadeMs, Consumer<Path> destino) {
+        this.janelaEstabilidadeMs = janelaEstabilidadeMs;
+        this.destino = destino;
+    }
+
+    public synchronized void iniciar() {
+        if (agendador != null) {
+            return;
+        }
+        agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "DetectorConclusao-Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+        agendador.scheduleWithFixedDelay(this::verificarPendentes,
+                INTERVALO_VERIFICACAO_MS, INTERVALO_VERIFICACAO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void parar() {
+        if (agendador != null) {
+            agendador.shutdownNow();
+            agendador = null;
+        }
+        pendentes.clear();
+    }
+
+    /**
+     * Registra atividade de escrita em um arquivo; ele será emitido quando estabilizar.
+     */
+    public void observar(Path arquivo) {
+        observar(arquivo, janelaEstabilidadeMs);
+    }
+
+    /**
+     * Registra atividade de escrita com uma janela de estabilidade específica para o arquivo.
+     */
+    public void observar(Path arquivo, long janelaMs) {
+        EstadoArquivo estado = lerEstado(arquivo, janelaMs);
+        if (estado != null) {
+            pendentes.merge(arquivo, estado, (anterior, novo) -> anterior.mesmoConteudo(novo) ? anterior : novo);
+        }
+    }
+
+    /**
+     * Sinaliza que o escritor fechou o arquivo; ele é emitido sem aguardar a janela.
+     */
+    public void concluido(Path arquivo) {
+        pendentes.remove(arquivo);
+        EstadoArquivo estado = lerEstado(arquivo, janelaEstabilidadeMs);
+        if (estado != null) {
+            emitir(arquivo, estado);
+        }
+    }
+
+    public int getPendentes() {
+        return pendentes.size();
+    }
+
+    private void verificarPendentes() {
+        long agora = System.currentTimeMillis();
+        for (Map.Entry<Path, EstadoArquivo> entrada : pendentes.entrySet()) {
+            Path arquivo = entrada.getKey();
+            EstadoArquivo anterior = entrada.getValue();
+            EstadoArquivo atual = lerEstado(arquivo, anterior.janelaMs);
+
+            if (atual == null) {
+                pendentes.remove(arquivo, anterior);
+            } else if (!anterior.mesmoConteudo(atual)) {
+                pendentes.replace(arquivo, anterior, atual);
+            } else if (agora - anterior.observadoEm >= anterior.janelaMs
+                    && pendentes.remove(arquivo, anterior)) {
+                emitir(arquivo, atual);
+            }
+        }
+        emitidos.values().removeIf(estado -> agora - estado.observadoEm > RETENCAO_EMITIDOS_MS);
+    }
+
+    private void emitir(Path arquivo, EstadoArquivo estado) {
+        EstadoArquivo ultimo = emitidos.put(arquivo, estado);
+        if (ultimo != null && ultimo.mesmoConteudo(estado)) {
+            return;
+        }
+        try {
+            destino.accept(arquivo);
+        } catch (RuntimeException e) {
+            System.err.println("[DetectorConclusao] Erro ao emitir " + arquivo + ": " + e.getMessage());
+        }
+    }
+
+    private EstadoArquivo lerEstado(Path arquivo, long janelaMs) {
+        try {
+            BasicFileAttributes atributos = Files.readAttributes(arquivo, BasicFileAttributes.class);
+            if (!atributos.isRegularFile()) {
+                return null;
+            }
+            return new EstadoArquivo(atributos.size(), atributos.lastModifiedTime().toMillis(),
+                    System.currentTimeMillis(), janelaMs);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class EstadoArquivo {
+        private final long tamanho;
+        private final long mtime;
+        private final long observadoEm;
+        private final long janelaMs;
+
+        private EstadoArquivo(long tamanho, long mtime, long observadoEm, long janelaMs) {
+            this.tamanho = tamanho;
+            this.mtime = mtime;
+            this.observadoEm = observadoEm;
+            this.janelaMs = janelaMs;
+        }
+
+        private boolean mesmoConteudo(EstadoArquivo outro) {
+            return tamanho == outro.tamanho && mtime == outro.mtime;
+        }
+    }
+}
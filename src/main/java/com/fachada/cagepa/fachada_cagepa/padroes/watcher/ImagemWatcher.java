@@ -1,127 +1,71 @@
 package com.fachada.cagepa.fachada_cagepa.padroes.watcher;
 
-import com.fachada.cagepa.fachada_cagepa.padroes.ocr.LeituraHidrometroService;
+import com.fachada.cagepa.fachada_cagepa.padroes.config.ConfigBuilder;
+import com.fachada.cagepa.fachada_cagepa.padroes.pipeline.MetricasIngestao;
+import com.fachada.cagepa.fachada_cagepa.padroes.pipeline.PipelineIngestao;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.nio.file.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Monitora as raízes de imagens configuradas, cada uma recursivamente e em sua própria thread,
+ * com varreduras de reconciliação para eventos perdidos e sistemas de arquivos de rede.
+ */
 @Component
-public class ImagemWatcher implements Runnable {
-
-    private final LeituraHidrometroService leituraHidrometroService;
-    private volatile String directoryToWatch;
+public class ImagemWatcher {
+
+    private final PipelineIngestao pipelineIngestao;
+    private final MetricasIngestao metricas;
+    private final boolean usarInotify;
+    private final long janelaEstabilidadeMs;
+    private final long janelaSemFechamentoMs;
+    private final ConfiguracaoVarredura varredura;
+    private final List<MonitorRaiz> monitores = new ArrayList<>();
+    private volatile List<String> directoriesToWatch = List.of();
     private volatile boolean running = false;
-    private final Set<String> processedFiles = new HashSet<>();
-    private final Object lock = new Object();
 
-    public ImagemWatcher(LeituraHidrometroService leituraHidrometroService) {
-        this.leituraHidrometroService = leituraHidrometroService;
+    public ImagemWatcher(PipelineIngestao pipelineIngestao, MetricasIngestao metricas,
+                         @Value("${cagepa.watcher.inotify:true}") boolean usarInotify,
+                         @Value("${cagepa.watcher.janela-estabilidade-ms:500}") long janelaEstabilidadeMs,
+                         @Value("${cagepa.watcher.inotify.janela-sem-fechamento-ms:60000}") long janelaSemFechamentoMs,
+                         @Value("${cagepa.watcher.reconciliacao-ms:300000}") long reconciliacaoMs,
+                         @Value("${cagepa.watcher.varredura-rede-ms:10000}") long varreduraRedeMs,
+                         @Value("${cagepa.watcher.somente-varredura:false}") boolean somenteVarredura,
+                         @Value("${cagepa.watcher.tipos-rede:nfs,cifs,smb,9p,fuse.sshfs}") List<String> tiposRede) {
+        this.pipelineIngestao = pipelineIngestao;
+        this.metricas = metricas;
+        this.usarInotify = usarInotify;
+        this.janelaEstabilidadeMs = janelaEstabilidadeMs;
+        this.janelaSemFechamentoMs = janelaSemFechamentoMs;
+        this.varredura = new ConfiguracaoVarredura(reconciliacaoMs, varreduraRedeMs, somenteVarredura, tiposRede);
     }
 
+    /**
+     * Define as raízes a monitorar; aceita vários diretórios separados por ';'.
+     */
     public void setDirectoryToWatch(String path) {
-        this.directoryToWatch = path;
+        this.directoriesToWatch = ConfigBuilder.parseImageDirectories(path);
     }
 
-    public void start() {
+    public synchronized void start() {
         if (!running) {
             running = true;
-            Thread watcherThread = new Thread(this, "ImagemWatcher-Thread");
-            watcherThread.setDaemon(false);
-            watcherThread.start();
-            System.out.println("Iniciando monitoramento do diretorio: " + directoryToWatch);
-        }
-    }
-
-    public void stop() {
-        running = false;
-    }
-
-    @Override
-    public void run() {
-        try {
-            Path path = Paths.get(directoryToWatch);
-            if (!Files.exists(path)) {
-                System.err.println("Diretorio nao encontrado: " + directoryToWatch);
-                return;
-            }
-
-            processExistingFiles(path);
-
-            WatchService watchService = FileSystems.getDefault().newWatchService();
-            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
-
-            while (running) {
-                WatchKey key = watchService.poll(1, java.util.concurrent.TimeUnit.SECONDS);
-                if (key == null) {
-                    continue;
-                }
-
-                for (WatchEvent<?> event : key.pollEvents()) {
-                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE || event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
-                        Path filename = (Path) event.context();
-                        Path fullPath = path.resolve(filename);
-
-                        String filenameStr = filename.toString().toLowerCase();
-                        if (isImageFile(filenameStr)) {
-                            // Aguardar mais tempo para arquivo ser completamente escrito
-                            Thread.sleep(1500);
-
-                            synchronized (lock) {
-                                // Remover do cache para permitir reprocessamento
-                                processedFiles.remove(fullPath.toString());
-                                processImageFile(fullPath.toFile());
-                                processedFiles.add(fullPath.toString());
-                            }
-                        }
-                    }
-                }
-
-                if (!key.reset()) {
-                    System.err.println("WatchKey invalido, encerrando watcher");
-                    break;
-                }
+            pipelineIngestao.iniciar();
+            for (String diretorio : directoriesToWatch) {
+                MonitorRaiz monitor = new MonitorRaiz(Paths.get(diretorio), pipelineIngestao, metricas,
+                        usarInotify, janelaEstabilidadeMs, janelaSemFechamentoMs, varredura);
+                monitores.add(monitor);
+                monitor.start();
             }
-
-            watchService.close();
-
-        } catch (Exception e) {
-            System.err.println("Erro no watcher de imagens: " + e.getMessage());
-        }
-    }
-
-    private void processExistingFiles(Path path) {
-        try (var stream = Files.list(path)) {
-            stream.filter(Files::isRegularFile)
-                    .filter(p -> isImageFile(p.toString().toLowerCase()))
-                    .forEach(p -> {
-                        synchronized (lock) {
-                            if (!processedFiles.contains(p.toString())) {
-                                processImageFile(p.toFile());
-                                processedFiles.add(p.toString());
-                            }
-                        }
-                    });
-        } catch (Exception e) {
-            System.err.println("Erro ao processar arquivos existentes: " + e.getMessage());
-        }
-    }
-
-    private void processImageFile(File imageFile) {
-        try {
-            System.out.println("[ImagemWatcher] Processando arquivo: " + imageFile.getAbsolutePath());
-            leituraHidrometroService.processarImagemHidrometro(imageFile);
-            System.out.println("[ImagemWatcher] Arquivo processado com sucesso: " + imageFile.getName());
-        } catch (Exception e) {
-            System.err.println("[ImagemWatcher] Erro ao processar arquivo " + imageFile.getName() + ": " + e.getMessage());
         }
     }
 
-    private boolean isImageFile(String filename) {
-        return filename.endsWith(".jpg") || filename.endsWith(".jpeg") || 
-               filename.endsWith(".png") || filename.endsWith(".bmp") ||
-               filename.endsWith(".gif") || filename.endsWith(".tiff");
+    public synchronized void stop() {
+        running = false;
+        monitores.forEach(MonitorRaiz::stop);
+        monitores.clear();
     }
 }
@@ -0,0 +1,178 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.watcher;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Structure;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Acesso direto ao inotify do Linux via JNA (já presente como dependência do tess4j).
+ *
+ * Diferente do WatchService, o inotify entrega IN_CLOSE_WRITE, que indica que o escritor
+ * fechou o arquivo, dispensando esperas para saber se a imagem foi completamente gravada.
+ */
+public class MonitorInotify implements Closeable {
+
+    public static final int IN_CLOSE_WRITE = 0x00000008;
+    public static final int IN_MOVED_TO = 0x00000080;
+    public static final int IN_CREATE = 0x00000100;
+    public static final int IN_DELETE_SELF = 0x00000400;
+    public static final int IN_Q_OVERFLOW = 0x00004000;
+    public static final int IN_IGNORED = 0x00008000;
+    public static final int IN_ISDIR = 0x40000000;
+
+    private static final int IN_NONBLOCK = 0x800;
+    private static final int IN_CLOEXEC = 0x80000;
+    private static final short POLLIN = 0x1;
+    private static final int MASCARA = IN_CLOSE_WRITE | IN_MOVED_TO | IN_CREATE | IN_DELETE_SELF;
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+
+    private final LibC libc;
+    private final int fd;
+    private final Map<Integer, Path> diretoriosPorWatch = new ConcurrentHashMap<>();
+    private final byte[] buffer = new byte[TAMANHO_BUFFER];
+
+    private MonitorInotify(LibC libc, int fd) {
+        this.libc = libc;
+        this.fd = fd;
+    }
+
+    /**
+     * Cria um monitor inotify, ou retorna null se o sistema não oferecer suporte.
+     */
+    public static MonitorInotify criar() {
+        if (!System.getProperty("os.name", "").toLowerCase().contains("linux")) {
+            return null;
+        }
+        try {
+            LibC libc = Native.load("c", LibC.class);
+            int fd = libc.inotify_init1(IN_NONBLOCK | IN_CLOEXEC);
+            if (fd < 0) {
+                return null;
+            }
+            return new MonitorInotify(libc, fd);
+        } catch (Throwable e) {
+            System.err.println("[MonitorInotify] inotify indisponivel: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Passa a monitorar um diretório (não recursivo).
+     */
+    public boolean adicionarDiretorio(Path diretorio) {
+        int wd = libc.inotify_add_watch(fd, diretorio.toAbsolutePath().toString(), MASCARA);
+        if (wd < 0) {
+            return false;
+        }
+        diretoriosPorWatch.put(wd, diretorio);
+        return true;
+    }
+
+    /**
+     * Aguarda até timeoutMs por eventos e retorna os que estiverem disponíveis.
+     */
+    public List<Evento> aguardarEventos(int timeoutMs) {
+        List<Evento> eventos = new ArrayList<>();
+
+        PollFd pollFd = new PollFd();
+        pollFd.fd = fd;
+        pollFd.events = POLLIN;
+        if (libc.poll(pollFd, 1, timeoutMs) <= 0) {
+            return eventos;
+        }
+
+        int lidos = libc.read(fd, buffer, new NativeLong(buffer.length)).intValue();
+        if (lidos <= 0) {
+            return eventos;
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, lidos).order(ByteOrder.nativeOrder());
+        while (bytes.remaining() >= 16) {
+            int wd = bytes.getInt();
+            int mascara = bytes.getInt();
+            bytes.getInt(); // cookie
+            int tamanhoNome = bytes.getInt();
+
+            String nome = "";
+            if (tamanhoNome > 0) {
+                byte[] nomeBytes = new byte[tamanhoNome];
+                bytes.get(nomeBytes);
+                int fim = 0;
+                while (fim < tamanhoNome && nomeBytes[fim] != 0) {
+                    fim++;
+                }
+                nome = new String(nomeBytes, 0, fim, StandardCharsets.UTF_8);
+            }
+
+            if ((mascara & IN_Q_OVERFLOW) != 0) {
+                eventos.add(new Evento(null, mascara));
+                continue;
+            }
+
+            Path diretorio = diretoriosPorWatch.get(wd);
+            if ((mascara & IN_IGNORED) != 0) {
+                diretoriosPorWatch.remove(wd);
+            }
+            if (diretorio != null) {
+                eventos.add(new Evento(nome.isEmpty() ? diretorio : diretorio.resolve(nome), mascara));
+            }
+        }
+        return eventos;
+    }
+
+    @Override
+    public void close() {
+        libc.close(fd);
+    }
+
+    /**
+     * Evento inotify já resolvido para o caminho completo (null em IN_Q_OVERFLOW).
+     */
+    public static final class Evento {
+        private final Path caminho;
+        private final int mascara;
+
+        private Evento(Path caminho, int mascara) {
+            this.caminho = caminho;
+            this.mascara = mascara;
+        }
+
+        public Path getCaminho() {
+            return caminho;
+        }
+
+        public boolean possui(int flag) {
+            return (mascara & flag) != 0;
+        }
+    }
+
+    @Structure.FieldOrder({"fd", "events", "revents"})
+    public static class PollFd extends Structure {
+        public int fd;
+        public short events;
+        public short revents;
+    }
+
+    interface LibC extends Library {
+        int inotify_init1(int flags);
+
+        int inotify_add_watch(int fd, String pathname, int mask);
+
+        int poll(PollFd fds, int nfds, int timeout);
+
+        NativeLong read(int fd, byte[] buf, NativeLong count);
+
+        int close(int fd);
+    }
+}
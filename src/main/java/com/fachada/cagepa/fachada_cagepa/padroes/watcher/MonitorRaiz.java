@@ -0,0 +1,317 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.watcher;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.pipeline.MetricasIngestao;
+import com.fachada.cagepa.fachada_cagepa.padroes.pipeline.PipelineIngestao;
+import io.micrometer.core.instrument.Counter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monitora uma raiz de imagens e todas as suas subpastas, inclusive as criadas depois.
+ * Cada raiz tem thread, detector de conclusão e fila de descoberta próprios, de modo que
+ * um distrito com muitos envios não atrasa os demais.
+ *
+ * Varreduras de reconciliação complementam os eventos: na partida, em estouro da fila de
+ * eventos, periodicamente e, em sistemas de arquivos de rede, como único mecanismo.
+ *
+ * A thread de eventos nunca espera pelo pipeline: os arquivos concluídos vão para um conjunto
+ * de entrega (só caminhos, sem repetição) que uma thread própria da raiz repassa ao pipeline,
+ * bloqueando ali quando a descoberta está cheia. Assim a fila de eventos do kernel continua
+ * sendo drenada mesmo com o pipeline saturado. A varredura entrega direto, na própria thread.
+ */
+class MonitorRaiz implements Runnable {
+
+    private final Path raiz;
+    private final String entrada;
+    private final PipelineIngestao pipelineIngestao;
+    private final Counter arquivosDetectados;
+    private final Counter estouros;
+    private final DetectorConclusaoArquivo detectorConclusao;
+    private final boolean usarInotify;
+    private final long janelaSemFechamentoMs;
+    private volatile boolean inotifyAtivo = false;
+    private final ReconciliadorDiretorio reconciliador;
+    private final ConfiguracaoVarredura varredura;
+    // Arquivos concluidos aguardando a thread de entrega, em ordem de chegada; guardado pelo proprio conjunto
+    private final Set<Path> aEntregar = new LinkedHashSet<>();
+    private Thread entrega;
+    private volatile boolean running = false;
+
+    MonitorRaiz(Path raiz, PipelineIngestao pipelineIngestao, MetricasIngestao metricas, boolean usarInotify,
+                long janelaEstabilidadeMs, long janelaSemFechamentoMs, ConfiguracaoVarredura varredura) {
+        this.raiz = raiz;
+        this.entrada = raiz.toAbsolutePath().toString();
+        this.pipelineIngestao = pipelineIngestao;
+        this.arquivosDetectados = metricas.arquivosDetectados(entrada);
+        this.estouros = metricas.estourosWatcher(entrada);
+        this.usarInotify = usarInotify;
+        this.janelaSemFechamentoMs = janelaSemFechamentoMs;
+        this.varredura = varredura;
+        this.detectorConclusao = new DetectorConclusaoArquivo(janelaEstabilidadeMs, this::entregar);
+        this.reconciliador = new ReconciliadorDiretorio(raiz, janelaEstabilidadeMs, this::onFileCompleted,
+                this::emEscrita, (arquivo, tamanho, mtime) ->
+                        pipelineIngestao.getLedger().jaProcessado(arquivo.toFile(), tamanho, mtime));
+    }
+
+    void start() {
+        running = true;
+        detectorConclusao.iniciar();
+        entrega = new Thread(this::entregarContinuamente, "ImagemWatcher-Entrega-" + raiz.getFileName());
+        entrega.setDaemon(true);
+        entrega.start();
+        Thread watcherThread = new Thread(this, "ImagemWatcher-" + raiz.getFileName());
+        watcherThread.setDaemon(false);
+        watcherThread.start();
+        System.out.println("Iniciando monitoramento do diretorio: " + raiz);
+    }
+
+    void stop() {
+        running = false;
+        reconciliador.parar();
+        detectorConclusao.parar();
+        if (entrega != null) {
+            entrega.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!Files.isDirectory(raiz)) {
+                System.err.println("Diretorio nao encontrado: " + raiz);
+                return;
+            }
+
+            if (varredura.somenteVarredura() || sistemaDeArquivosDeRede()) {
+                // Sem notificacoes confiaveis (NFS/SMB): apenas varreduras periodicas
+                System.out.println("[ImagemWatcher] Monitorando " + raiz + " somente por varredura a cada "
+                        + varredura.intervaloRedeMs() + " ms");
+                reconciliador.iniciar(varredura.intervaloRedeMs());
+                while (running) {
+                    Thread.sleep(1000);
+                }
+                return;
+            }
+
+            MonitorInotify inotify = usarInotify ? MonitorInotify.criar() : null;
+            if (inotify != null && registrarArvore(inotify, raiz)) {
+                System.out.println("[ImagemWatcher] Usando inotify (IN_CLOSE_WRITE) em " + raiz);
+                inotifyAtivo = true;
+                try (inotify) {
+                    reconciliador.iniciar(varredura.intervaloMs());
+                    watchWithInotify(inotify);
+                }
+            } else {
+                if (inotify != null) {
+                    inotify.close();
+                }
+                watchWithWatchService();
+            }
+
+        } catch (Exception e) {
+            System.err.println("Erro no watcher de imagens (" + raiz + "): " + e.getMessage());
+        }
+    }
+
+    private void watchWithInotify(MonitorInotify inotify) {
+        while (running) {
+            for (MonitorInotify.Evento evento : inotify.aguardarEventos(1000)) {
+                Path fullPath = evento.getCaminho();
+                if (fullPath == null) {
+                    if (evento.possui(MonitorInotify.IN_Q_OVERFLOW)) {
+                        // Eventos perdidos pelo kernel: a varredura encontra o que faltou
+                        System.err.println("[ImagemWatcher] Fila do inotify estourou em " + raiz + ", reconciliando");
+                        estouros.increment();
+                        reconciliador.solicitar();
+                    }
+                    continue;
+                }
+
+                if (evento.possui(MonitorInotify.IN_ISDIR)) {
+                    if (evento.possui(MonitorInotify.IN_CREATE) || evento.possui(MonitorInotify.IN_MOVED_TO)) {
+                        // Subpasta nova: monitora e pega o que ja foi escrito antes do watch existir
+                        registrarArvore(inotify, fullPath);
+                        reconciliador.solicitar();
+                    }
+                    continue;
+                }
+
+                if (!isImageFile(fullPath.getFileName().toString().toLowerCase())) {
+                    continue;
+                }
+
+                // So o fechamento ou a chegada por rename indicam arquivo completo; um escritor lento
+                // pode pausar mais que a janela de estabilidade no meio da escrita
+                if (evento.possui(MonitorInotify.IN_CLOSE_WRITE) || evento.possui(MonitorInotify.IN_MOVED_TO)) {
+                    detectorConclusao.concluido(fullPath);
+                } else if (evento.possui(MonitorInotify.IN_CREATE)) {
+                    emEscrita(fullPath);
+                }
+            }
+        }
+    }
+
+    private boolean registrarArvore(MonitorInotify inotify, Path diretorio) {
+        try (var stream = Files.walk(diretorio)) {
+            return stream.filter(Files::isDirectory)
+                    .map(inotify::adicionarDiretorio)
+                    .reduce(true, Boolean::logicalAnd);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Erro ao registrar subpastas de " + diretorio + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void watchWithWatchService() throws Exception {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, Path> diretorios = new HashMap<>();
+            registrarArvore(watchService, raiz, diretorios);
+            reconciliador.iniciar(varredura.intervaloMs());
+
+            while (running) {
+                WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                if (key == null) {
+                    continue;
+                }
+
+                Path diretorio = diretorios.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        System.err.println("[ImagemWatcher] Eventos perdidos (OVERFLOW) em " + raiz + ", reconciliando");
+                        estouros.increment();
+                        reconciliador.solicitar();
+                        continue;
+                    }
+                    if (diretorio == null || (event.kind() != StandardWatchEventKinds.ENTRY_CREATE
+                            && event.kind() != StandardWatchEventKinds.ENTRY_MODIFY)) {
+                        continue;
+                    }
+
+                    Path filename = (Path) event.context();
+                    Path fullPath = diretorio.resolve(filename);
+
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(fullPath)) {
+                        registrarArvore(watchService, fullPath, diretorios);
+                        reconciliador.solicitar();
+                    } else if (isImageFile(filename.toString().toLowerCase())) {
+                        // Emitido uma unica vez, quando tamanho e mtime estabilizarem
+                        detectorConclusao.observar(fullPath);
+                    }
+                }
+
+                if (!key.reset()) {
+                    diretorios.remove(key);
+                    if (diretorios.isEmpty()) {
+                        System.err.println("WatchKey invalido, encerrando watcher de " + raiz);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void registrarArvore(WatchService watchService, Path diretorio, Map<WatchKey, Path> diretorios) {
+        try (var stream = Files.walk(diretorio)) {
+            stream.filter(Files::isDirectory).forEach(dir -> {
+                try {
+                    WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                    diretorios.put(key, dir);
+                } catch (IOException e) {
+                    System.err.println("Erro ao monitorar " + dir + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Erro ao registrar subpastas de " + diretorio + ": " + e.getMessage());
+        }
+    }
+
+    private boolean sistemaDeArquivosDeRede() {
+        try {
+            String tipo = Files.getFileStore(raiz).type().toLowerCase();
+            return varredura.tiposRede().stream().anyMatch(tipo::startsWith);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Arquivo possivelmente em escrita. Com inotify, o fechamento o emite; a verificação de
+     * estabilidade fica só para quem nunca fecha (hard link, escritor travado), com janela longa.
+     */
+    private void emEscrita(Path fullPath) {
+        if (!inotifyAtivo) {
+            detectorConclusao.observar(fullPath);
+        } else if (janelaSemFechamentoMs > 0) {
+            detectorConclusao.observar(fullPath, janelaSemFechamentoMs);
+        }
+    }
+
+    private void onFileCompleted(Path fullPath) {
+        enqueueImageFile(fullPath.toFile());
+    }
+
+    /**
+     * Passa o arquivo concluído à thread de entrega, sem bloquear quem o detectou.
+     */
+    private void entregar(Path fullPath) {
+        synchronized (aEntregar) {
+            if (aEntregar.add(fullPath)) {
+                aEntregar.notifyAll();
+            }
+        }
+    }
+
+    private void entregarContinuamente() {
+        while (running) {
+            Path proximo;
+            synchronized (aEntregar) {
+                try {
+                    while (running && aEntregar.isEmpty()) {
+                        aEntregar.wait(1000);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (aEntregar.isEmpty()) {
+                    continue;
+                }
+                Iterator<Path> primeiro = aEntregar.iterator();
+                proximo = primeiro.next();
+                primeiro.remove();
+            }
+            // Bloqueia aqui, e nao na thread de eventos, enquanto a descoberta estiver cheia
+            onFileCompleted(proximo);
+        }
+    }
+
+    private void enqueueImageFile(File imageFile) {
+        try {
+            // Bloqueia se a fila de descoberta desta raiz estiver cheia (backpressure do pipeline);
+            // em cluster, apenas publica para a instancia que arrendar o arquivo
+            if (pipelineIngestao.publicar(imageFile, entrada)) {
+                System.out.println("[ImagemWatcher] Arquivo enfileirado: " + imageFile.getAbsolutePath());
+                arquivosDetectados.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("[ImagemWatcher] Enfileiramento interrompido: " + imageFile.getName());
+        }
+    }
+
+    static boolean isImageFile(String filename) {
+        return filename.endsWith(".jpg") || filename.endsWith(".jpeg") ||
+               filename.endsWith(".png") || filename.endsWith(".bmp") ||
+               filename.endsWith(".gif") || filename.endsWith(".tiff");
+    }
+}
@@ -0,0 +1,139 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.watcher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Varreduras de reconciliação de uma raiz: compara (caminho, tamanho, mtime) de cada imagem
+ * com o ledger de ingestão e só repassa os arquivos que ainda não têm desfecho para essa
+ * versão. Percorrer a árvore custa um stat e uma consulta ao índice mapeado do ledger por
+ * arquivo, sem estado em heap por arquivo; o trabalho a jusante (OCR) é proporcional ao que
+ * falta processar. Um arquivo liberado sem desfecho (ingestão não autorizada, hidrômetro
+ * desconhecido) é oferecido de novo a cada varredura, até ter um.
+ *
+ * Cobre o que os eventos do sistema perdem: estouro da fila do kernel, sistemas de arquivos
+ * de rede sem notificação e a carga inicial do diretório.
+ */
+class ReconciliadorDiretorio {
+
+    private final Path raiz;
+    private final long janelaEstabilidadeMs;
+    private final Consumer<Path> concluido;
+    private final Consumer<Path> emEscrita;
+    private final Processados processados;
+    private final AtomicBoolean pendente = new AtomicBoolean(false);
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param concluido recebe arquivos alterados há mais que a janela de estabilidade
+     * @param emEscrita recebe arquivos alterados recentemente, que podem ainda estar em escrita
+     * @param processados indica as versões de arquivo que já têm desfecho
+     */
+    ReconciliadorDiretorio(Path raiz, long janelaEstabilidadeMs, Consumer<Path> concluido, Consumer<Path> emEscrita,
+                           Processados processados) {
+        this.raiz = raiz;
+        this.janelaEstabilidadeMs = janelaEstabilidadeMs;
+        this.concluido = concluido;
+        this.emEscrita = emEscrita;
+        this.processados = processados;
+    }
+
+    /**
+     * Inicia a thread de varredura e faz a primeira varredura imediatamente.
+     *
+     * @param intervaloMs intervalo entre varreduras periódicas (0 desativa)
+     */
+    synchronized void iniciar(long intervaloMs) {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ImagemWatcher-Varredura-" + raiz.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        solicitar();
+        if (intervaloMs > 0) {
+            executor.scheduleWithFixedDelay(this::solicitar, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void parar() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Agenda uma varredura; pedidos feitos enquanto outra aguarda são coalescidos.
+     */
+    synchronized void solicitar() {
+        if (executor != null && pendente.compareAndSet(false, true)) {
+            executor.execute(this::varrer);
+        }
+    }
+
+    private void varrer() {
+        pendente.set(false);
+        long inicio = System.currentTimeMillis();
+        long limiteEstavel = inicio - janelaEstabilidadeMs;
+        int imagens = 0;
+        int pendentes = 0;
+
+        try (Stream<Path> arquivos = Files.walk(raiz)) {
+            for (Path arquivo : (Iterable<Path>) arquivos::iterator) {
+                if (!MonitorRaiz.isImageFile(arquivo.getFileName().toString().toLowerCase())) {
+                    continue;
+                }
+                BasicFileAttributes atributos;
+                try {
+                    atributos = Files.readAttributes(arquivo, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue;
+                }
+                if (!atributos.isRegularFile()) {
+                    continue;
+                }
+
+                imagens++;
+                long mtime = atributos.lastModifiedTime().toMillis();
+                if (processados.contem(arquivo, atributos.size(), mtime)) {
+                    continue;
+                }
+                pendentes++;
+                if (mtime < limiteEstavel) {
+                    concluido.accept(arquivo);
+                } else {
+                    emEscrita.accept(arquivo);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Varredura incompleta: o que faltou continua sem desfecho e entra na proxima
+            System.err.println("[ImagemWatcher] Erro na varredura de " + raiz + ": " + e.getMessage());
+            return;
+        }
+
+        if (pendentes > 0) {
+            System.out.println("[ImagemWatcher] Varredura de " + raiz + ": " + imagens + " imagens, "
+                    + pendentes + " sem desfecho (" + (System.currentTimeMillis() - inicio) + " ms)");
+        }
+    }
+
+    /**
+     * Consulta, feita pela thread de varredura, das versões de arquivo que já têm desfecho.
+     */
+    @FunctionalInterface
+    interface Processados {
+        boolean contem(Path arquivo, long tamanho, long mtime);
+    }
+}
@@ -0,0 +1,101 @@
+package com.fachada.cagepa.fachada_cagepa.infra.indice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TabelaHashMapeadaTest {
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void gravaESubstituiValores() throws IOException {
+        try (TabelaHashMapeada tabela = TabelaHashMapeada.abrir(diretorio.resolve("indice.idx"), 16)) {
+            assertEquals(TabelaHashMapeada.AUSENTE, tabela.colocar(42, 7));
+            assertEquals(7, tabela.obter(42));
+            assertTrue(tabela.contem(42));
+
+            assertEquals(7, tabela.colocar(42, 9));
+            assertEquals(9, tabela.obter(42));
+            assertEquals(1, tabela.getQuantidade());
+
+            assertEquals(TabelaHashMapeada.AUSENTE, tabela.obter(43));
+            assertFalse(tabela.contem(43));
+        }
+    }
+
+    @Test
+    void aceitaAChaveZero() throws IOException {
+        try (TabelaHashMapeada tabela = TabelaHashMapeada.abrir(diretorio.resolve("indice.idx"), 16)) {
+            assertFalse(tabela.contem(0));
+            tabela.colocar(0, 5);
+
+            assertEquals(5, tabela.obter(0));
+            assertEquals(1, tabela.getQuantidade());
+        }
+    }
+
+    @Test
+    void cresceAlemDaCapacidadeInicialSemPerderEntradas() throws IOException {
+        Path arquivo = diretorio.resolve("indice.idx");
+        long tamanhoInicial;
+        try (TabelaHashMapeada tabela = TabelaHashMapeada.abrir(arquivo, 1024)) {
+            tamanhoInicial = Files.size(arquivo);
+            tabela.setMetadado(123);
+            tabela.setMetadadoAuxiliar(456);
+            for (long chave = 1; chave <= 5000; chave++) {
+                tabela.colocar(chave * 0x9E3779B97F4A7C15L, chave);
+            }
+
+            assertTrue(Files.size(arquivo) > tamanhoInicial);
+            assertEquals(5000, tabela.getQuantidade());
+            for (long chave = 1; chave <= 5000; chave++) {
+                assertEquals(chave, tabela.obter(chave * 0x9E3779B97F4A7C15L));
+            }
+            assertEquals(123, tabela.getMetadado());
+            assertEquals(456, tabela.getMetadadoAuxiliar());
+        }
+        assertFalse(Files.exists(diretorio.resolve("indice.idx.tmp")));
+    }
+
+    @Test
+    void reabreComAsEntradasEOsMetadados() throws IOException {
+        Path arquivo = diretorio.resolve("sub").resolve("indice.idx");
+        try (TabelaHashMapeada tabela = TabelaHashMapeada.abrir(arquivo, 16)) {
+            for (long chave = 0; chave < 2000; chave++) {
+                tabela.colocar(chave, -chave);
+            }
+            tabela.setMetadado(77);
+            tabela.setMetadadoAuxiliar(88);
+        }
+
+        try (TabelaHashMapeada tabela = TabelaHashMapeada.abrir(arquivo, 16)) {
+            assertEquals(2000, tabela.getQuantidade());
+            for (long chave = 0; chave < 2000; chave++) {
+                assertEquals(-chave, tabela.obter(chave));
+            }
+            assertFalse(tabela.contem(2000));
+            assertEquals(77, tabela.getMetadado());
+            assertEquals(88, tabela.getMetadadoAuxiliar());
+
+            tabela.colocar(2000, 1);
+            assertEquals(2001, tabela.getQuantidade());
+        }
+    }
+
+    @Test
+    void recusaArquivoQueNaoEIndice() throws IOException {
+        Path arquivo = Files.write(diretorio.resolve("outro.bin"), new byte[128]);
+
+        assertThrows(IOException.class, () -> TabelaHashMapeada.abrir(arquivo, 16));
+    }
+}
@@ -0,0 +1,60 @@
+package com.fachada.cagepa.fachada_cagepa.infra.indice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XxHash64Test {
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void confereOsValoresConhecidosDaSementeZero() {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(""));
+        assertEquals(0xD24EC4F1A98C6E5BL, XxHash64.hash("a"));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64.hash("abc"));
+        assertEquals(0xFBCEA83C8A378BF1L, XxHash64.hash("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    void arquivoMaiorQueOBufferTemOHashConhecido() throws IOException {
+        Path arquivo = Files.write(diretorio.resolve("grande.bin"), dados(200_003));
+
+        assertEquals(0xA30178594C2451D8L, XxHash64.hash(arquivo));
+    }
+
+    @Test
+    void arquivoEBufferConcordamEmTornoDoLimiteDoBuffer() throws IOException {
+        int[] tamanhos = {0, 1, 31, 32, 33, 65_535, 65_536, 65_537, 65_536 + 31, 65_536 + 32, 2 * 65_536 + 5};
+        for (int tamanho : tamanhos) {
+            byte[] conteudo = dados(tamanho);
+            Path arquivo = Files.write(diretorio.resolve("arquivo-" + tamanho + ".bin"), conteudo);
+
+            assertEquals(XxHash64.hash(ByteBuffer.wrap(conteudo)), XxHash64.hash(arquivo), "tamanho " + tamanho);
+        }
+    }
+
+    @Test
+    void hashDoBufferComecaNaPosicaoAtualENaoAAltera() {
+        ByteBuffer buffer = ByteBuffer.wrap("xxabc".getBytes());
+        buffer.position(2);
+
+        assertEquals(XxHash64.hash("abc"), XxHash64.hash(buffer));
+        assertEquals(2, buffer.position());
+    }
+
+    private static byte[] dados(int tamanho) {
+        byte[] dados = new byte[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            dados[i] = (byte) (i * 31 + 7);
+        }
+        return dados;
+    }
+}
@@ -0,0 +1,172 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.adapter;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.HidrometroOCRStrategy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sourceforge.tess4j.Tesseract;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheVisualLeituraTest {
+
+    private static final int DISTANCIA_MAXIMA = 0;
+    private static final int LARGURA_DIGITO = 30;
+    private static final int ALTURA = 60;
+    private static final int ESPESSURA = 5;
+
+    // Segmentos acesos por digito: a, b, c, d, e, f, g
+    private static final String[] SEGMENTOS = {
+            "1111110", "0110000", "1101101", "1111001", "0110011",
+            "1011011", "1011111", "1110000", "1111111", "1111011"
+    };
+
+    @Test
+    void ruidoDoSensorEBrilhoFicamDentroDaDistanciaMaxima() {
+        long[] referencia = CacheVisualLeitura.hash(janela("00012345", 0, 0, null), null);
+
+        Random aleatorio = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            int brilho = aleatorio.nextInt(41) - 20;
+            long[] ruidosa = CacheVisualLeitura.hash(janela("00012345", brilho, 16, aleatorio), null);
+            int distancia = CacheVisualLeitura.distancia(referencia, ruidosa);
+            assertTrue(distancia <= DISTANCIA_MAXIMA, "ruido gerou distancia " + distancia);
+        }
+    }
+
+    @Test
+    void mudancaDeUmDigitoUltrapassaADistanciaMaxima() {
+        Random aleatorio = new Random(7);
+        long[] referencia = CacheVisualLeitura.hash(janela("00012345", 0, 8, aleatorio), null);
+
+        for (String mudada : new String[]{"00012346", "00012355", "00012385", "10012345"}) {
+            long[] hash = CacheVisualLeitura.hash(janela(mudada, 0, 8, aleatorio), null);
+            int distancia = CacheVisualLeitura.distancia(referencia, hash);
+            assertTrue(distancia > DISTANCIA_MAXIMA, mudada + " ficou a apenas " + distancia + " blocos");
+        }
+    }
+
+    @Test
+    void digitosQueDiferemEmUmSoSegmentoTemAssinaturasDiferentes() {
+        String[][] pares = {{"0", "8"}, {"8", "9"}, {"6", "8"}, {"1", "7"}, {"5", "6"}, {"3", "9"}};
+        for (String[] par : pares) {
+            for (int posicao = 0; posicao < 8; posicao += 7) {
+                String base = "00012345";
+                String antes = base.substring(0, posicao) + par[0] + base.substring(posicao + 1);
+                String depois = base.substring(0, posicao) + par[1] + base.substring(posicao + 1);
+                int distancia = CacheVisualLeitura.distancia(CacheVisualLeitura.hash(janela(antes, 0, 0, null), null),
+                        CacheVisualLeitura.hash(janela(depois, 0, 0, null), null));
+                assertTrue(distancia > DISTANCIA_MAXIMA, antes + " e " + depois + " ficaram a " + distancia + " blocos");
+            }
+        }
+    }
+
+    @Test
+    void roiForaDaImagemNaoTemHash() {
+        BufferedImage imagem = janela("00012345", 0, 0, null);
+        assertNull(CacheVisualLeitura.hash(imagem, new Rectangle(100, 0, imagem.getWidth(), ALTURA)));
+        assertNull(CacheVisualLeitura.hash(imagem, new Rectangle(0, 0, 10, 4)));
+    }
+
+    @Test
+    void reaproveitaALeituraQuandoAJanelaNaoMuda() {
+        CacheVisualLeitura cache = new CacheVisualLeitura(new SimpleMeterRegistry(), true, DISTANCIA_MAXIMA);
+        HidrometroOCRStrategy strategy = estrategia();
+        Random aleatorio = new Random(3);
+
+        assertNull(cache.reaproveitar("sha", janela("00012345", 0, 0, null)));
+        cache.registrar("sha", janela("00012345", 0, 0, null), strategy, 12345L);
+
+        OCROutcome reaproveitada = cache.reaproveitar("sha", janela("00012345", 10, 8, aleatorio));
+        assertNotNull(reaproveitada);
+        assertTrue(reaproveitada.isReused());
+        assertEquals(12345L, reaproveitada.getValue());
+        assertEquals(strategy, reaproveitada.getStrategy());
+
+        assertNull(cache.reaproveitar("sha", janela("00012346", 0, 8, aleatorio)));
+        assertNull(cache.reaproveitar("outro", janela("00012345", 0, 0, null)));
+        assertEquals(1L, cache.getReaproveitadas());
+    }
+
+    @Test
+    void desabilitadoNuncaReaproveita() {
+        CacheVisualLeitura cache = new CacheVisualLeitura(new SimpleMeterRegistry(), false, DISTANCIA_MAXIMA);
+        cache.registrar("sha", janela("00012345", 0, 0, null), estrategia(), 12345L);
+        assertNull(cache.reaproveitar("sha", janela("00012345", 0, 0, null)));
+    }
+
+    /**
+     * Janela de dígitos de sete segmentos, escuros sobre fundo claro, com deslocamento de
+     * brilho e ruído uniforme de até +-ruido níveis por pixel.
+     */
+    private static BufferedImage janela(String digitos, int brilho, int ruido, Random aleatorio) {
+        BufferedImage imagem = new BufferedImage(digitos.length() * LARGURA_DIGITO, ALTURA, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = imagem.createGraphics();
+        g.setColor(new Color(220, 220, 220));
+        g.fillRect(0, 0, imagem.getWidth(), ALTURA);
+        g.setColor(new Color(30, 30, 30));
+        for (int i = 0; i < digitos.length(); i++) {
+            desenharDigito(g, i * LARGURA_DIGITO, SEGMENTOS[digitos.charAt(i) - '0']);
+        }
+        g.dispose();
+
+        for (int y = 0; y < ALTURA; y++) {
+            for (int x = 0; x < imagem.getWidth(); x++) {
+                int variacao = brilho + (ruido > 0 ? aleatorio.nextInt(2 * ruido + 1) - ruido : 0);
+                int cinza = Math.max(0, Math.min(255, (imagem.getRGB(x, y) & 0xFF) + variacao));
+                imagem.setRGB(x, y, (cinza << 16) | (cinza << 8) | cinza);
+            }
+        }
+        return imagem;
+    }
+
+    private static void desenharDigito(Graphics2D g, int x, String acesos) {
+        int esquerda = x + 5;
+        int direita = x + LARGURA_DIGITO - 5 - ESPESSURA;
+        int topo = 5;
+        int meio = ALTURA / 2 - ESPESSURA / 2;
+        int base = ALTURA - 5 - ESPESSURA;
+        int largura = direita - esquerda + ESPESSURA;
+        int[][] segmentos = {
+                {esquerda, topo, largura, ESPESSURA},
+                {direita, topo, ESPESSURA, meio - topo + ESPESSURA},
+                {direita, meio, ESPESSURA, base - meio + ESPESSURA},
+                {esquerda, base, largura, ESPESSURA},
+                {esquerda, meio, ESPESSURA, base - meio + ESPESSURA},
+                {esquerda, topo, ESPESSURA, meio - topo + ESPESSURA},
+                {esquerda, meio, largura, ESPESSURA}
+        };
+        for (int s = 0; s < segmentos.length; s++) {
+            if (acesos.charAt(s) == '1') {
+                g.fillRect(segmentos[s][0], segmentos[s][1], segmentos[s][2], segmentos[s][3]);
+            }
+        }
+    }
+
+    private static HidrometroOCRStrategy estrategia() {
+        return new HidrometroOCRStrategy() {
+            @Override
+            public String extractMeterId(String filename) {
+                return null;
+            }
+
+            @Override
+            public Long extractMeterValue(BufferedImage image, Tesseract tesseract) {
+                return null;
+            }
+
+            @Override
+            public String getMeterType() {
+                return "TESTE";
+            }
+        };
+    }
+}
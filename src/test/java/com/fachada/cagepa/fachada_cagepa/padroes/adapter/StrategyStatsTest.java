@@ -0,0 +1,105 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.adapter;
+
+import com.fachada.cagepa.fachada_cagepa.padroes.strategy.HidrometroOCRStrategy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sourceforge.tess4j.Tesseract;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StrategyStatsTest {
+
+    private static final long NANOS = 5_000_000;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void estrategiaQuePiorouPerdeAPosicaoEmAlgumasJanelas() {
+        StrategyStats antiga = new StrategyStats(estrategia("antiga"), registry);
+        StrategyStats estavel = new StrategyStats(estrategia("estavel"), registry);
+
+        // Longo historico: a antiga acerta sempre, a estavel acerta metade
+        for (int janela = 0; janela < 100; janela++) {
+            registrar(antiga, 100, 100);
+            registrar(estavel, 100, 50);
+            fecharJanelas(antiga, estavel);
+        }
+        assertTrue(antiga.score() > estavel.score());
+
+        // A antiga passa a errar sempre
+        int janelas = 0;
+        while (antiga.score() >= estavel.score()) {
+            registrar(antiga, 100, 0);
+            registrar(estavel, 100, 50);
+            fecharJanelas(antiga, estavel);
+            janelas++;
+        }
+        assertTrue(janelas <= 5, "janelas ate trocar de posicao: " + janelas);
+        // Pelos totais desde a partida a antiga ainda pareceria melhor
+        assertTrue(antiga.getHitRate() > estavel.getHitRate());
+    }
+
+    @Test
+    void totaisDesdeAPartidaNaoDecaem() {
+        StrategyStats stats = new StrategyStats(estrategia("a"), registry);
+        registrar(stats, 10, 4);
+
+        for (int i = 0; i < 50; i++) {
+            stats.fecharJanela();
+        }
+
+        assertEquals(10, stats.getAttempts());
+        assertEquals(4, stats.getHits());
+        assertEquals(0.4, stats.getHitRate(), 1e-9);
+        assertEquals(NANOS / 1_000_000.0, stats.getAverageMillis(), 1e-9);
+    }
+
+    @Test
+    void janelaCorrenteContaAntesDoFechamento() {
+        StrategyStats comFalhas = new StrategyStats(estrategia("a"), registry);
+        StrategyStats comAcertos = new StrategyStats(estrategia("b"), registry);
+        registrar(comFalhas, 10, 5);
+        registrar(comAcertos, 10, 5);
+        fecharJanelas(comFalhas, comAcertos);
+        assertEquals(comFalhas.score(), comAcertos.score(), 0.0);
+
+        registrar(comFalhas, 10, 0);
+        registrar(comAcertos, 10, 10);
+
+        assertTrue(comAcertos.score() > comFalhas.score());
+    }
+
+    private static void registrar(StrategyStats stats, int tentativas, int acertos) {
+        for (int i = 0; i < tentativas; i++) {
+            stats.record(i < acertos, NANOS);
+        }
+    }
+
+    private static void fecharJanelas(StrategyStats... todas) {
+        for (StrategyStats stats : todas) {
+            stats.fecharJanela();
+        }
+    }
+
+    private static HidrometroOCRStrategy estrategia(String tipo) {
+        return new HidrometroOCRStrategy() {
+            @Override
+            public String extractMeterId(String filename) {
+                return null;
+            }
+
+            @Override
+            public Long extractMeterValue(BufferedImage image, Tesseract tesseract) {
+                return null;
+            }
+
+            @Override
+            public String getMeterType() {
+                return tipo;
+            }
+        };
+    }
+}
@@ -0,0 +1,176 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.ocr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DataCapturaImagemTest {
+
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATA_ORIGINAL = 0x9003;
+    private static final int TAG_DATA_DIGITALIZACAO = 0x9004;
+    private static final int TAG_ISO = 0x8827;
+    private static final DateTimeFormatter FORMATO_EXIF = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+    // Mtime em segundos inteiros, representavel em qualquer sistema de arquivos
+    private static final long MTIME = 1_700_000_000_000L;
+
+    private final DataCapturaImagem dataCaptura = new DataCapturaImagem();
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void leDataOriginalDeJpegLittleEndian() throws IOException {
+        File arquivo = gravar("ii.jpg", jpeg(tiff(ByteOrder.LITTLE_ENDIAN,
+                Map.of(TAG_DATA_ORIGINAL, "2024:03:15 08:30:45"))));
+
+        assertEquals(LocalDateTime.of(2024, 3, 15, 8, 30, 45), dataCaptura.extrair(arquivo));
+    }
+
+    @Test
+    void leDataOriginalDeJpegBigEndian() throws IOException {
+        File arquivo = gravar("mm.jpg", jpeg(tiff(ByteOrder.BIG_ENDIAN,
+                Map.of(TAG_DATA_ORIGINAL, "2023:12:31 23:59:59"))));
+
+        assertEquals(LocalDateTime.of(2023, 12, 31, 23, 59, 59), dataCaptura.extrair(arquivo));
+    }
+
+    @Test
+    void leDataOriginalDeTiff() throws IOException {
+        File arquivo = gravar("imagem.tif", tiff(ByteOrder.BIG_ENDIAN,
+                Map.of(TAG_DATA_ORIGINAL, "2022:01:02 03:04:05")));
+
+        assertEquals(LocalDateTime.of(2022, 1, 2, 3, 4, 5), dataCaptura.extrair(arquivo));
+    }
+
+    @Test
+    void semDataOriginalUsaADataDeDigitalizacao() throws IOException {
+        Map<Integer, String> tags = new LinkedHashMap<>();
+        tags.put(TAG_ISO, null);
+        tags.put(TAG_DATA_DIGITALIZACAO, "2024:05:06 07:08:09");
+        File arquivo = gravar("digitalizada.jpg", jpeg(tiff(ByteOrder.LITTLE_ENDIAN, tags)));
+
+        assertEquals(LocalDateTime.of(2024, 5, 6, 7, 8, 9), dataCaptura.extrair(arquivo));
+    }
+
+    @Test
+    void semTagDeDataUsaOMtime() throws IOException {
+        Map<Integer, String> tags = new LinkedHashMap<>();
+        tags.put(TAG_ISO, null);
+        File arquivo = gravar("sem-data.jpg", jpeg(tiff(ByteOrder.BIG_ENDIAN, tags)));
+
+        assertEquals(dataDoMtime(), dataCaptura.extrair(arquivo));
+    }
+
+    @Test
+    void dataZeradaUsaOMtime() throws IOException {
+        File arquivo = gravar("zerada.jpg", jpeg(tiff(ByteOrder.LITTLE_ENDIAN,
+                Map.of(TAG_DATA_ORIGINAL, "0000:00:00 00:00:00"))));
+
+        assertEquals(dataDoMtime(), dataCaptura.extrair(arquivo));
+    }
+
+    @Test
+    void dataNoFuturoUsaOMtime() throws IOException {
+        String futura = LocalDateTime.now().plusDays(3).format(FORMATO_EXIF);
+        File arquivo = gravar("futura.jpg", jpeg(tiff(ByteOrder.LITTLE_ENDIAN, Map.of(TAG_DATA_ORIGINAL, futura))));
+
+        assertEquals(dataDoMtime(), dataCaptura.extrair(arquivo));
+    }
+
+    @Test
+    void arquivoSemExifUsaOMtime() throws IOException {
+        File arquivo = gravar("sem-exif.jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2});
+
+        assertEquals(dataDoMtime(), dataCaptura.extrair(arquivo));
+    }
+
+    private File gravar(String nome, byte[] conteudo) throws IOException {
+        File arquivo = Files.write(diretorio.resolve(nome), conteudo).toFile();
+        arquivo.setLastModified(MTIME);
+        return arquivo;
+    }
+
+    private static LocalDateTime dataDoMtime() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(MTIME), ZoneId.systemDefault());
+    }
+
+    /**
+     * Estrutura TIFF com um IFD0 que aponta para o IFD Exif. Tags com valor null viram
+     * entradas SHORT; as demais, datas ASCII de 20 bytes gravadas depois do IFD.
+     */
+    private static byte[] tiff(ByteOrder ordem, Map<Integer, String> tagsExif) {
+        int ifd0 = 8;
+        int exifIfd = ifd0 + 2 + 12 + 4;
+        int dados = exifIfd + 2 + tagsExif.size() * 12 + 4;
+        ByteBuffer buffer = ByteBuffer.allocate(dados + tagsExif.size() * 20).order(ordem);
+
+        buffer.put((byte) (ordem == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M'));
+        buffer.put((byte) (ordem == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M'));
+        buffer.putShort((short) 42).putInt(ifd0);
+
+        buffer.putShort((short) 1);
+        buffer.putShort((short) TAG_EXIF_IFD).putShort((short) 4).putInt(1).putInt(exifIfd);
+        buffer.putInt(0);
+
+        buffer.putShort((short) tagsExif.size());
+        for (Map.Entry<Integer, String> tag : tagsExif.entrySet()) {
+            buffer.putShort(tag.getKey().shortValue());
+            if (tag.getValue() == null) {
+                buffer.putShort((short) 3).putInt(1).putShort((short) 100).putShort((short) 0);
+            } else {
+                byte[] texto = (tag.getValue() + "\0").getBytes(StandardCharsets.US_ASCII);
+                buffer.putShort((short) 2).putInt(texto.length).putInt(dados);
+                buffer.put(dados, texto);
+                dados += texto.length;
+            }
+        }
+        buffer.putInt(0);
+        return buffer.array();
+    }
+
+    /**
+     * JPEG com um segmento APP0 antes do APP1 Exif, para exercitar a varredura dos marcadores.
+     */
+    private static byte[] jpeg(byte[] tiff) {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        saida.write(0xFF);
+        saida.write(0xD8);
+        segmento(saida, 0xE0, "JFIF\0\1\1\0\0\1\0\1\0\0".getBytes(StandardCharsets.ISO_8859_1));
+
+        byte[] exif = new byte[6 + tiff.length];
+        System.arraycopy("Exif\0\0".getBytes(StandardCharsets.US_ASCII), 0, exif, 0, 6);
+        System.arraycopy(tiff, 0, exif, 6, tiff.length);
+        segmento(saida, 0xE1, exif);
+
+        segmento(saida, 0xDA, new byte[4]);
+        saida.write(0xFF);
+        saida.write(0xD9);
+        return saida.toByteArray();
+    }
+
+    private static void segmento(ByteArrayOutputStream saida, int marcador, byte[] conteudo) {
+        int tamanho = conteudo.length + 2;
+        saida.write(0xFF);
+        saida.write(marcador);
+        saida.write(tamanho >> 8);
+        saida.write(tamanho & 0xFF);
+        saida.writeBytes(conteudo);
+    }
+}
@@ -0,0 +1,113 @@
+package com.fachada.cagepa.fachada_cagepa.padroes.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilaJustaPorChaveTest {
+
+    // Itens "A1", "B2"...: a chave e a letra
+    private static String chave(String item) {
+        return item.substring(0, 1);
+    }
+
+    @Test
+    void retiraEmRodizioEntreAsChaves() throws InterruptedException {
+        FilaJustaPorChave<String> fila = new FilaJustaPorChave<>(10, FilaJustaPorChaveTest::chave);
+        for (String item : List.of("A1", "A2", "A3", "B1", "C1", "C2")) {
+            assertTrue(fila.offer(item));
+        }
+        assertEquals(3, fila.getChavesPendentes());
+        assertEquals("A1", fila.peek());
+
+        List<String> retirados = new ArrayList<>();
+        while (!fila.isEmpty()) {
+            retirados.add(fila.take());
+        }
+        assertEquals(List.of("A1", "B1", "C1", "A2", "C2", "A3"), retirados);
+        assertEquals(0, fila.getChavesPendentes());
+        assertNull(fila.poll());
+    }
+
+    @Test
+    void chaveQueReapareceVaiParaOFimDoRodizio() {
+        FilaJustaPorChave<String> fila = new FilaJustaPorChave<>(10, FilaJustaPorChaveTest::chave);
+        fila.offer("A1");
+        fila.offer("B1");
+        assertEquals("A1", fila.poll());
+        fila.offer("A2");
+
+        List<String> retirados = new ArrayList<>();
+        fila.drainTo(retirados);
+        assertEquals(List.of("B1", "A2"), retirados);
+    }
+
+    @Test
+    void semCoalescenciaRecusaComAFilaCheia() throws InterruptedException {
+        FilaJustaPorChave<String> fila = new FilaJustaPorChave<>(2, FilaJustaPorChaveTest::chave);
+        assertTrue(fila.offer("A1"));
+        assertTrue(fila.offer("A2"));
+        assertFalse(fila.offer("A3"));
+        assertFalse(fila.offer("B1", 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, fila.remainingCapacity());
+    }
+
+    @Test
+    void filaCheiaCoalesceOMaisAntigoDaChaveEmRajada() {
+        List<String> coalescidos = new ArrayList<>();
+        FilaJustaPorChave<String> fila = new FilaJustaPorChave<>(3, FilaJustaPorChaveTest::chave, 2, 60_000,
+                coalescidos::add);
+        fila.offer("A1");
+        fila.offer("A2");
+        fila.offer("B1");
+
+        // A ja tem 2 itens na janela: A3 toma o lugar de A1 mesmo com a fila cheia
+        assertTrue(fila.offer("A3"));
+        assertEquals(List.of("A1"), coalescidos);
+        assertEquals(3, fila.size());
+
+        // B tem um so item: nao ha o que coalescer e a fila continua cheia
+        assertFalse(fila.offer("B2"));
+
+        List<String> retirados = new ArrayList<>();
+        fila.drainTo(retirados);
+        assertEquals(List.of("A2", "B1", "A3"), retirados);
+    }
+
+    @Test
+    void contaAsCoalescidasPorChave() {
+        FilaJustaPorChave<String> fila = new FilaJustaPorChave<>(10, FilaJustaPorChaveTest::chave, 1, 60_000,
+                item -> { });
+        for (String item : List.of("A1", "A2", "A3", "B1", "B2", "C1")) {
+            fila.offer(item);
+        }
+
+        assertEquals(Map.of("A", 2L, "B", 1L), fila.getCoalescidasPorChave());
+        assertEquals(3, fila.size());
+        List<String> retirados = new ArrayList<>();
+        fila.drainTo(retirados);
+        assertEquals(List.of("A3", "B2", "C1"), retirados);
+    }
+
+    @Test
+    void itensForaDaJanelaNaoSaoCoalescidos() throws InterruptedException {
+        List<String> coalescidos = new ArrayList<>();
+        FilaJustaPorChave<String> fila = new FilaJustaPorChave<>(10, FilaJustaPorChaveTest::chave, 1, 1,
+                coalescidos::add);
+        fila.offer("A1");
+        Thread.sleep(20);
+        fila.offer("A2");
+
+        assertTrue(coalescidos.isEmpty());
+        assertEquals(2, fila.size());
+        assertTrue(fila.getCoalescidasPorChave().isEmpty());
+    }
+}